@@ -0,0 +1,60 @@
+package com.zrmiller.zupdate;
+
+import com.zrmiller.zupdate.data.AppVersion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AppVersionBenchmark {
+
+    @Param({"v1.4.2", "v12.40.3-pre17", "invalid-tag"})
+    public String tag;
+
+    private AppVersion version;
+    private AppVersion stable;
+    private AppVersion preRelease;
+
+    @Setup
+    public void setup() {
+        version = new AppVersion(tag);
+        stable = new AppVersion("v1.4.2");
+        preRelease = new AppVersion("v1.4.2-pre3");
+    }
+
+    @Benchmark
+    public AppVersion parse() {
+        return new AppVersion(tag);
+    }
+
+    @Benchmark
+    public AppVersion parseCached() {
+        return AppVersion.of(tag);
+    }
+
+    @Benchmark
+    public int compareToStable() {
+        return version.compareTo(stable);
+    }
+
+    @Benchmark
+    public int compareToPreRelease() {
+        return version.compareTo(preRelease);
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.zrmiller.zupdate;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads a file from a loopback HTTP server with {@link RangedDownloader}, at different read buffer sizes.
+ * The server holds the file in memory, so the copy loop and HTTP client are what's being measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DownloadBenchmark {
+
+    private static final int FILE_SIZE = 1024 * 1024 * 32;
+    private static final String ETAG = "\"benchmark\"";
+
+    @Param({"4096", "16384", "65536", "262144"})
+    public int bufferSize;
+
+    @Param({"1", "4"})
+    public int connections;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private byte[] file;
+    private String url;
+    private Path directory;
+    private Path target;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = new byte[FILE_SIZE];
+        new Random(42).nextBytes(file);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/App.jar", this::handle);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/App.jar";
+        directory = Files.createTempDirectory("download-benchmark");
+        target = directory.resolve("App.jar");
+        // Downloads log through ZLogger, which echoes to the console
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(originalOut);
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        Files.deleteIfExists(target);
+        Files.deleteIfExists(directory);
+    }
+
+    @Setup(Level.Invocation)
+    public void deleteTarget() throws IOException {
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        RangedDownloader downloader = new RangedDownloader(url, target, connections, (bytes, total) -> {
+        });
+        downloader.setBufferSize(bufferSize);
+        downloader.download();
+        return Files.size(target);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        exchange.getResponseHeaders().set("ETag", ETAG);
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(file.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        int start = 0;
+        int end = file.length - 1;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            start = Integer.parseInt(bounds[0]);
+            if (bounds.length > 1 && !bounds[1].isEmpty()) end = Math.min(end, Integer.parseInt(bounds[1]));
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + file.length);
+            exchange.sendResponseHeaders(206, end - start + 1);
+        } else {
+            exchange.sendResponseHeaders(200, file.length);
+        }
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(file, start, end - start + 1);
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.zrmiller.zupdate;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.zrmiller.zupdate.data.ReleaseVersion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses and sorts releases built from a realistic GitHub API response (src/jmh/resources/release.json).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReleaseVersionBenchmark {
+
+    @Param({"100", "10000"})
+    public int releaseCount;
+
+    private String releaseJson;
+    private JsonObject releaseObject;
+    private String releasePageJson;
+    private List<ReleaseVersion> shuffledReleases;
+
+    @Setup
+    public void setup() throws IOException {
+        try (InputStream stream = ReleaseVersionBenchmark.class.getResourceAsStream("/release.json")) {
+            if (stream == null) throw new IOException("Missing benchmark resource: release.json");
+            releaseJson = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        releaseObject = JsonParser.parseString(releaseJson).getAsJsonObject();
+        // A full page of releases, as returned when listing all releases
+        StringBuilder page = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            if (i > 0) page.append(',');
+            page.append(releaseJson.replace("v1.4.2", "v1." + (i / 10) + "." + (i % 10)));
+        }
+        releasePageJson = page.append(']').toString();
+        Random random = new Random(42);
+        shuffledReleases = new ArrayList<>(releaseCount);
+        for (int i = 0; i < releaseCount; i++) {
+            String tag = "v" + random.nextInt(5) + "." + random.nextInt(30) + "." + random.nextInt(30);
+            if (random.nextInt(4) == 0) tag += "-pre" + (random.nextInt(9) + 1);
+            shuffledReleases.add(new ReleaseVersion(tag, "App.jar", "https://example.com/" + tag + "/App.jar", "", false));
+        }
+    }
+
+    @Benchmark
+    public List<ReleaseVersion> sortReleases() {
+        ArrayList<ReleaseVersion> releases = new ArrayList<>(shuffledReleases);
+        Collections.sort(releases);
+        return releases;
+    }
+
+    @Benchmark
+    public ReleaseVersion parseJsonObject() {
+        return new ReleaseVersion(releaseObject);
+    }
+
+    @Benchmark
+    public ReleaseVersion parseJsonString() {
+        return new ReleaseVersion(JsonParser.parseString(releaseJson));
+    }
+
+    @Benchmark
+    public void streamReleasePage(Blackhole blackhole) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(releasePageJson))) {
+            reader.beginArray();
+            while (reader.hasNext()) blackhole.consume(ReleaseVersion.read(reader));
+            reader.endArray();
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.zrmiller.zupdate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logging throughput for each writer mode. Console output is discarded, so only file writing is measured.
+ * Each mode runs in its own fork since the logger is static.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZLoggerBenchmark {
+
+    @Param({"sync", "async", "mapped", "mapped-async"})
+    public String mode;
+
+    private Path directory;
+    private PrintStream originalOut;
+    private PrintStream originalErr;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("zlogger-benchmark");
+        originalOut = System.out;
+        originalErr = System.err;
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(discard);
+        System.setErr(discard);
+        ZLogger.setMapped(mode.startsWith("mapped"));
+        ZLogger.open(directory + "/", new String[0], mode.endsWith("async"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ZLogger.close();
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+        try (var files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void log() {
+        ZLogger.log("Downloaded segment 1048576-2097151 from https://github.com/zmilla93/ZUpdater/releases/download/v1.4.2/ZUpdater.jar");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void logContended() {
+        ZLogger.log("Downloaded segment 1048576-2097151 from https://github.com/zmilla93/ZUpdater/releases/download/v1.4.2/ZUpdater.jar");
+    }
+
+}
@@ -72,6 +72,7 @@ public class App {
         updateManager.continueUpdateProcess(args);
         if (updateManager.getCurrentUpdateAction() != UpdateAction.CLEAN && updateManager.isUpdateAvailable()) {
             updateManager.addProgressListener(progressFrame);
+            updateManager.addDownloadProgressListener(progressFrame);
             try {
                 SwingUtilities.invokeAndWait(() -> {
                     progressFrame.setVisible(true);
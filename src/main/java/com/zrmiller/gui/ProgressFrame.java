@@ -1,13 +1,16 @@
 package com.zrmiller.gui;
 
+import com.zrmiller.zupdate.IDownloadProgressListener;
 import com.zrmiller.zupdate.IUpdateProgressListener;
+import com.zrmiller.zupdate.data.TransferProgress;
 
 import javax.swing.*;
 import java.awt.*;
 
-public class ProgressFrame extends JDialog implements IUpdateProgressListener {
+public class ProgressFrame extends JDialog implements IUpdateProgressListener, IDownloadProgressListener {
 
     private final JProgressBar progressBar = new JProgressBar();
+    private final JLabel speedLabel = new JLabel(" ");
 
     public ProgressFrame() {
         setTitle("ZUpdater");
@@ -18,7 +21,12 @@ public class ProgressFrame extends JDialog implements IUpdateProgressListener {
         progressBar.setMinimum(0);
         progressBar.setMaximum(100);
         panel.add(progressBar);
+        panel.add(speedLabel);
 
+        // Size the label for its longest text, so the dialog doesn't resize while downloading
+        speedLabel.setText("000.0 MB/s, 0000s left (limited)");
+        speedLabel.setPreferredSize(speedLabel.getPreferredSize());
+        speedLabel.setText(" ");
         pack();
     }
 
@@ -28,6 +36,16 @@ public class ProgressFrame extends JDialog implements IUpdateProgressListener {
         progressBar.setValue(progressPercent);
     }
 
+    @Override
+    public void onTransferProgress(TransferProgress progress) {
+        assert (SwingUtilities.isEventDispatchThread());
+        progressBar.setIndeterminate(!progress.isSizeKnown());
+        String text = formatBytes(progress.bytesPerSecond()) + "/s";
+        if (progress.etaMillis() >= 0) text += ", " + Math.max(1, (progress.etaMillis() + 999) / 1000) + "s left";
+        if (progress.isRateLimited()) text += " (limited)";
+        speedLabel.setText(text);
+    }
+
     @Override
     public void onDownloadComplete() {
         assert (SwingUtilities.isEventDispatchThread());
@@ -40,4 +58,10 @@ public class ProgressFrame extends JDialog implements IUpdateProgressListener {
         setVisible(false);
     }
 
+    private static String formatBytes(double bytes) {
+        if (bytes >= 1024 * 1024) return String.format("%.1f MB", bytes / (1024 * 1024));
+        if (bytes >= 1024) return String.format("%.0f KB", bytes / 1024);
+        return String.format("%.0f B", bytes);
+    }
+
 }
@@ -0,0 +1,152 @@
+package com.zrmiller.zupdate;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background writer used by {@link ZLogger} in async mode.
+ * <p>
+ * Logging threads add records to a bounded ring buffer without taking a lock.
+ * A single daemon thread drains the buffer in batches, formats timestamps once per second,
+ * and only flushes the log file when enough data has been written or enough time has passed.
+ * If the buffer is full, logging threads wait for space rather than dropping records,
+ * spinning briefly before parking.
+ */
+class AsyncLogWriter {
+
+    private static final int CAPACITY = 1024 * 8;
+    private static final int MASK = CAPACITY - 1;
+    private static final int FLUSH_BYTES = 1024 * 8;
+    private static final long FLUSH_INTERVAL_MS = 250;
+    private static final long IDLE_PARK_NANOS = FLUSH_INTERVAL_MS * 1_000_000;
+    private static final int FULL_SPINS = 100;
+    private static final long FULL_PARK_NANOS = 100_000;
+
+    private final AtomicReferenceArray<LogRecord> buffer = new AtomicReferenceArray<>(CAPACITY);
+    // Next sequence to be claimed by a logging thread
+    private final AtomicLong head = new AtomicLong();
+    // Next sequence to be read by the writer thread
+    private final AtomicLong tail = new AtomicLong();
+    // Logging threads between checking that the writer is running and publishing their record
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Thread thread;
+    private volatile boolean idle;
+    private volatile boolean running = true;
+
+    // Only used by the writer thread
+    private long cachedSecond = -1;
+    private String cachedTimestamp;
+    private long unflushedBytes;
+    private long lastFlush = System.currentTimeMillis();
+
+    private record LogRecord(long time, String message, boolean error) {
+
+    }
+
+    AsyncLogWriter() {
+        thread = new Thread(this::run, "ZLogger Writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Adds a record to the buffer, waiting for space if the buffer is full.
+     *
+     * @return False if the writer has been closed
+     */
+    boolean offer(long time, String message, boolean error) {
+        LogRecord record = new LogRecord(time, message, error);
+        // Counted before checking running, so close() can't finish while this record is being added
+        inFlight.incrementAndGet();
+        try {
+            long sequence;
+            int spins = 0;
+            while (true) {
+                if (!running) return false;
+                sequence = head.get();
+                if (sequence - tail.get() >= CAPACITY) {
+                    LockSupport.unpark(thread);
+                    if (++spins < FULL_SPINS) Thread.onSpinWait();
+                    else LockSupport.parkNanos(this, FULL_PARK_NANOS);
+                    continue;
+                }
+                if (head.compareAndSet(sequence, sequence + 1)) break;
+            }
+            buffer.set((int) (sequence & MASK), record);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        if (idle) LockSupport.unpark(thread);
+        return true;
+    }
+
+    /**
+     * Writes all buffered records, including ones still being added, flushes, then stops the writer thread.
+     * Records offered after this are rejected, so the caller can write them directly.
+     */
+    void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (running || inFlight.get() > 0 || tail.get() != head.get()) {
+            int written = drain();
+            long now = System.currentTimeMillis();
+            if (unflushedBytes > 0 && (unflushedBytes >= FLUSH_BYTES || now - lastFlush >= FLUSH_INTERVAL_MS)) flush(now);
+            if (written == 0 && running) {
+                idle = true;
+                // Recheck after setting the flag, so a record added in between isn't missed
+                if (tail.get() == head.get()) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                idle = false;
+            } else if (written == 0) {
+                // Closing, waiting for a logging thread to publish its record
+                Thread.onSpinWait();
+            }
+        }
+        flush(System.currentTimeMillis());
+    }
+
+    private int drain() {
+        int count = 0;
+        long sequence = tail.get();
+        while (sequence != head.get()) {
+            int index = (int) (sequence & MASK);
+            LogRecord record = buffer.get(index);
+            // The slot has been claimed but the record isn't visible yet
+            if (record == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+            buffer.set(index, null);
+            sequence++;
+            tail.set(sequence);
+            unflushedBytes += ZLogger.writeRecord(record.time, getTimestamp(record.time), record.message, record.error);
+            count++;
+        }
+        return count;
+    }
+
+    private String getTimestamp(long time) {
+        long second = time / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedTimestamp = ZLogger.formatTimestamp(time);
+        }
+        return cachedTimestamp;
+    }
+
+    private void flush(long now) {
+        ZLogger.flushWriter();
+        unflushedBytes = 0;
+        lastFlush = now;
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.zrmiller.zupdate;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits download speed with a token bucket, shared by every connection of a download.
+ * <p>
+ * Tokens are bytes, refilled at the rate limit up to the burst size, so short bursts run at full speed
+ * while the average stays at the limit. The rate can be changed at any time, ie lifted when the user starts
+ * waiting on a download. Threads waiting on the old rate are woken immediately.
+ */
+public class BandwidthLimiter {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private long bytesPerSecond;
+    private long burstBytes;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param bytesPerSecond Average rate limit, 0 for unlimited
+     * @param burstBytes     Bytes that can be read at full speed after being idle
+     */
+    public BandwidthLimiter(long bytesPerSecond, long burstBytes) {
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        this.burstBytes = Math.max(1, burstBytes);
+        tokens = this.burstBytes;
+        lastRefill = System.nanoTime();
+    }
+
+    /**
+     * @param bytesPerSecond Average rate limit, 0 for unlimited
+     */
+    public synchronized void setRate(long bytesPerSecond) {
+        refill();
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        notifyAll();
+    }
+
+    /**
+     * @return The rate limit in bytes per second, or 0 if unlimited
+     */
+    public synchronized long getRate() {
+        return bytesPerSecond;
+    }
+
+    public synchronized void setBurst(long burstBytes) {
+        refill();
+        this.burstBytes = Math.max(1, burstBytes);
+        tokens = Math.min(tokens, this.burstBytes);
+        notifyAll();
+    }
+
+    /**
+     * Blocks until the given number of bytes can be transferred.
+     * Requests larger than the burst size are allowed once the bucket is full, and are paid back before the next one.
+     *
+     * @return Time spent waiting in milliseconds
+     * @throws InterruptedIOException If the thread was interrupted while waiting
+     */
+    public synchronized long acquire(int bytes) throws InterruptedIOException {
+        long waitStart = System.nanoTime();
+        while (bytesPerSecond > 0) {
+            refill();
+            if (tokens >= Math.min(bytes, burstBytes)) {
+                tokens -= bytes;
+                break;
+            }
+            long waitNanos = (long) Math.ceil((Math.min(bytes, burstBytes) - tokens) * NANOS_PER_SECOND / bytesPerSecond);
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for bandwidth.");
+            }
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waitStart);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (bytesPerSecond == 0) tokens = burstBytes;
+        else tokens = Math.min(burstBytes, tokens + (double) (now - lastRefill) * bytesPerSecond / NANOS_PER_SECOND);
+        lastRefill = now;
+    }
+
+}
@@ -0,0 +1,211 @@
+package com.zrmiller.zupdate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A binary patch that rebuilds a new version of a file from an old version.
+ * <p>
+ * A patch is a gzip compressed list of instructions that either copy a range of bytes from the old file,
+ * or insert new bytes. The size and SHA-256 hash of both files are stored in the header, so a patch is
+ * only ever applied to the file it was created from, and the result is verified before it's used.
+ * <p>
+ * Use {@link #create(Path, Path, Path)} when publishing a release, and {@link #apply(Path, Path, Path)} when updating.
+ */
+public class DeltaPatch {
+
+    private static final int MAGIC = 0x5A504154; // "ZPAT"
+    private static final int FORMAT_VERSION = 1;
+    private static final byte OP_END = 0;
+    private static final byte OP_COPY = 1;
+    private static final byte OP_INSERT = 2;
+
+    private static final int BLOCK_SIZE = 1024;
+    private static final int BYTE_BUFFER_SIZE = 1024 * 16;
+
+    private DeltaPatch() {
+
+    }
+
+    /**
+     * Rebuilds the new file from the old file and a patch.
+     *
+     * @param source Old version of the file
+     * @param patch  Patch file
+     * @param output Location to write the new version of the file
+     * @throws IOException If the patch doesn't match the source file, or the result fails verification
+     */
+    public static void apply(Path source, Path patch, Path output) throws IOException {
+        try (DataInputStream patchStream = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(patch))));
+             FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ)) {
+            if (patchStream.readInt() != MAGIC) throw new IOException("Not a patch file: " + patch);
+            int formatVersion = patchStream.readUnsignedByte();
+            if (formatVersion != FORMAT_VERSION) throw new IOException("Unsupported patch version: " + formatVersion);
+            long sourceSize = patchStream.readLong();
+            byte[] sourceHash = patchStream.readNBytes(32);
+            long targetSize = patchStream.readLong();
+            byte[] targetHash = patchStream.readNBytes(32);
+            if (sourceChannel.size() != sourceSize || !Arrays.equals(sourceHash, UpdateUtil.hash(source)))
+                throw new IOException("Patch was not created for this version of the file.");
+            MessageDigest digest = UpdateUtil.newDigest();
+            long bytesWritten = 0;
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(output))) {
+                ByteBuffer buffer = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+                byte op;
+                while ((op = patchStream.readByte()) != OP_END) {
+                    if (op == OP_COPY) {
+                        long offset = patchStream.readLong();
+                        int length = patchStream.readInt();
+                        if (offset < 0 || length < 0 || offset + length > sourceSize)
+                            throw new IOException("Patch copy instruction out of bounds.");
+                        while (length > 0) {
+                            buffer.clear().limit(Math.min(length, BYTE_BUFFER_SIZE));
+                            int numBytesRead = sourceChannel.read(buffer, offset);
+                            if (numBytesRead < 0) throw new IOException("Unexpected end of source file.");
+                            outputStream.write(buffer.array(), 0, numBytesRead);
+                            digest.update(buffer.array(), 0, numBytesRead);
+                            offset += numBytesRead;
+                            length -= numBytesRead;
+                            bytesWritten += numBytesRead;
+                        }
+                    } else if (op == OP_INSERT) {
+                        int length = patchStream.readInt();
+                        byte[] data = new byte[BYTE_BUFFER_SIZE];
+                        while (length > 0) {
+                            int numBytesRead = patchStream.read(data, 0, Math.min(length, BYTE_BUFFER_SIZE));
+                            if (numBytesRead < 0) throw new IOException("Unexpected end of patch file.");
+                            outputStream.write(data, 0, numBytesRead);
+                            digest.update(data, 0, numBytesRead);
+                            length -= numBytesRead;
+                            bytesWritten += numBytesRead;
+                        }
+                    } else {
+                        throw new IOException("Unknown patch instruction: " + op);
+                    }
+                }
+            }
+            if (bytesWritten != targetSize || !Arrays.equals(targetHash, digest.digest()))
+                throw new IOException("Patched file failed verification.");
+        }
+    }
+
+    /**
+     * Creates a patch that rebuilds the target file from the source file.
+     * Both files are read into memory, so this is intended for release tooling rather than clients.
+     *
+     * @param source Old version of the file
+     * @param target New version of the file
+     * @param patch  Location to write the patch
+     */
+    public static void create(Path source, Path target, Path patch) throws IOException {
+        byte[] sourceData = Files.readAllBytes(source);
+        byte[] targetData = Files.readAllBytes(target);
+        // Index every full block of the source file by its weak hash
+        HashMap<Integer, ArrayList<Integer>> blocks = new HashMap<>();
+        for (int offset = 0; offset + BLOCK_SIZE <= sourceData.length; offset += BLOCK_SIZE) {
+            int blockHash = new RollingHash(sourceData, offset).value();
+            blocks.computeIfAbsent(blockHash, k -> new ArrayList<>()).add(offset);
+        }
+        try (DataOutputStream patchStream = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(patch))))) {
+            patchStream.writeInt(MAGIC);
+            patchStream.writeByte(FORMAT_VERSION);
+            patchStream.writeLong(sourceData.length);
+            patchStream.write(UpdateUtil.newDigest().digest(sourceData));
+            patchStream.writeLong(targetData.length);
+            patchStream.write(UpdateUtil.newDigest().digest(targetData));
+            ByteArrayOutputStream pending = new ByteArrayOutputStream();
+            int position = 0;
+            RollingHash rollingHash = targetData.length >= BLOCK_SIZE ? new RollingHash(targetData, 0) : null;
+            while (position < targetData.length) {
+                int matchOffset = -1;
+                if (rollingHash != null) {
+                    ArrayList<Integer> candidates = blocks.get(rollingHash.value());
+                    if (candidates != null) {
+                        for (int candidate : candidates) {
+                            if (Arrays.equals(sourceData, candidate, candidate + BLOCK_SIZE, targetData, position, position + BLOCK_SIZE)) {
+                                matchOffset = candidate;
+                                break;
+                            }
+                        }
+                    }
+                }
+                if (matchOffset == -1) {
+                    pending.write(targetData[position]);
+                    position++;
+                    if (rollingHash != null) {
+                        if (position + BLOCK_SIZE <= targetData.length) rollingHash.roll(targetData[position - 1], targetData[position + BLOCK_SIZE - 1]);
+                        else rollingHash = null;
+                    }
+                    continue;
+                }
+                // Extend the match as far as possible
+                int length = BLOCK_SIZE;
+                while (matchOffset + length < sourceData.length && position + length < targetData.length
+                        && sourceData[matchOffset + length] == targetData[position + length]) length++;
+                writeInsert(patchStream, pending);
+                patchStream.writeByte(OP_COPY);
+                patchStream.writeLong(matchOffset);
+                patchStream.writeInt(length);
+                position += length;
+                rollingHash = position + BLOCK_SIZE <= targetData.length ? new RollingHash(targetData, position) : null;
+            }
+            writeInsert(patchStream, pending);
+            patchStream.writeByte(OP_END);
+        }
+    }
+
+    private static void writeInsert(DataOutputStream patchStream, ByteArrayOutputStream pending) throws IOException {
+        if (pending.size() == 0) return;
+        patchStream.writeByte(OP_INSERT);
+        patchStream.writeInt(pending.size());
+        pending.writeTo(patchStream);
+        pending.reset();
+    }
+
+    /**
+     * An Adler-32 style checksum over a fixed size window that can be moved forward one byte at a time.
+     */
+    private static class RollingHash {
+
+        private int a;
+        private int b;
+
+        RollingHash(byte[] data, int offset) {
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                int value = data[offset + i] & 0xFF;
+                a += value;
+                b += (BLOCK_SIZE - i) * value;
+            }
+            a &= 0xFFFF;
+            b &= 0xFFFF;
+        }
+
+        void roll(byte removed, byte added) {
+            int out = removed & 0xFF;
+            a = (a - out + (added & 0xFF)) & 0xFFFF;
+            b = (b - BLOCK_SIZE * out + a) & 0xFFFF;
+        }
+
+        int value() {
+            return (b << 16) | a;
+        }
+
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.zrmiller.zupdate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Releases stored in a local or network directory, see {@link StaticReleaseSource} for the layout.
+ * Useful for serving updates from a shared drive, or as a stand-in for GitHub while testing.
+ */
+public class DirectoryReleaseSource extends StaticReleaseSource {
+
+    private final Path directory;
+
+    /**
+     * @param directory Directory containing releases.json
+     */
+    public DirectoryReleaseSource(Path directory) {
+        this.directory = directory.toAbsolutePath();
+    }
+
+    @Override
+    InputStream openFile(String path) throws IOException {
+        return Files.newInputStream(directory.resolve(path));
+    }
+
+    @Override
+    String getAssetURL(String tag, String name) {
+        return directory.resolve(tag).resolve(name).toUri().toString();
+    }
+
+}
@@ -0,0 +1,242 @@
+package com.zrmiller.zupdate;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A download cache shared by every process of a program, or by several programs of the same user
+ * pointed at the same directory.
+ * <p>
+ * Files are stored by the SHA-256 hash of their contents, with a small reference file mapping each URL to a hash.
+ * Each URL has a lock file, so when several processes update at once, exactly one downloads
+ * while the others wait, then link to the result. Files are hard linked into place where the file system allows it,
+ * and replaced while the lock is held, so processes never write the same target file. Partial downloads are resumable by whichever process gets the lock next.
+ * Entries that haven't been used in {@link #MAX_ENTRY_AGE_MS} are removed.
+ * <p>
+ * The directory must belong to the current user, and is only accessible by its owner on platforms that support it.
+ * A cached file is only reused if it matches the release's published checksum, or the asset size if no checksum is published.
+ */
+class DownloadCache {
+
+    private static final String DEFAULT_FOLDER = "cache";
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final String REFERENCE_SUFFIX = ".ref";
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final String ENTRY_SUFFIX = ".bin";
+    private static final long MAX_ENTRY_AGE_MS = 1000L * 60 * 60 * 24 * 30;
+    private static final long LOCK_TIMEOUT_MS = 1000 * 60;
+    private static final long LOCK_RETRY_DELAY_MS = 100;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+    // FileChannel locks are held by the whole JVM, so threads in the same process are coordinated separately
+    private static final ConcurrentHashMap<Path, Object> processLocks = new ConcurrentHashMap<>();
+
+    private final Path directory;
+
+    private DownloadCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return A cache in the given directory, or null if the directory can't be created, isn't owned
+     * by the current user, or can't be written to
+     */
+    static DownloadCache open(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            // A file this process creates is owned by whoever the OS considers the current user,
+            // which on Windows may be a group rather than the account named by user.name
+            Path probe = Files.createTempFile(directory, "owner", ".tmp");
+            UserPrincipal currentUser;
+            try {
+                currentUser = Files.getOwner(probe);
+            } finally {
+                Files.delete(probe);
+            }
+            if (!Files.getOwner(directory).equals(currentUser)) {
+                ZLogger.log("Download cache belongs to another user: " + directory);
+                return null;
+            }
+            PosixFileAttributeView posixView = Files.getFileAttributeView(directory, PosixFileAttributeView.class);
+            if (posixView != null) posixView.setPermissions(OWNER_ONLY);
+        } catch (IOException | UnsupportedOperationException e) {
+            ZLogger.log("Failed to open download cache, it may not be writable: " + directory);
+            return null;
+        }
+        return new DownloadCache(directory.toAbsolutePath());
+    }
+
+    /**
+     * @param appDirectory The program's working directory
+     */
+    static Path getDefaultDirectory(String appDirectory) {
+        return Path.of(appDirectory, DEFAULT_FOLDER);
+    }
+
+    /**
+     * Links or copies a file to the target location, downloading it first if it isn't cached.
+     * Waits while another process or thread is downloading the same URL,
+     * downloading directly without the cache if the wait times out.
+     *
+     * @param expectedSize   Published size of the file, or -1 if unknown
+     * @param expectedSha256 Supplies the published checksum, or null if none was published. Only called on a cache hit.
+     * @return The SHA-256 hash of the file
+     */
+    byte[] download(String url, Path target, int connections, BandwidthLimiter bandwidthLimiter,
+                    RangedDownloader.IProgressCallback progressCallback, long expectedSize, Supplier<String> expectedSha256) throws IOException {
+        String key = getKey(url);
+        Path lockFile = directory.resolve(key + LOCK_SUFFIX);
+        synchronized (processLocks.computeIfAbsent(lockFile, path -> new Object())) {
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = lock(channel)) {
+                if (lock == null) {
+                    ZLogger.log("Timed out waiting for download cache, downloading directly.");
+                    // Staged under a name of this process, since the process holding the lock may write the target too
+                    Path staged = UpdateUtil.getStagingPath(target);
+                    try {
+                        RangedDownloader downloader = new RangedDownloader(url, staged, connections, progressCallback);
+                        downloader.setBandwidthLimiter(bandwidthLimiter);
+                        downloader.download();
+                        UpdateUtil.moveAtomically(staged, target);
+                        return downloader.getSha256();
+                    } finally {
+                        // Never resumed, since the next process stages under its own name
+                        Files.deleteIfExists(staged);
+                        Files.deleteIfExists(Path.of(staged + RangedDownloader.STATE_FILE_SUFFIX));
+                    }
+                }
+                byte[] cached = copyCachedEntry(key, target, expectedSize, expectedSha256);
+                if (cached != null) {
+                    long size = Files.size(target);
+                    progressCallback.onProgress(size, size);
+                    progressCallback.onFinish();
+                    UpdateMetrics.increment(UpdateMetrics.Counter.DOWNLOAD_CACHE_HITS);
+                    ZLogger.log("Used download from cache: " + url);
+                    return cached;
+                }
+                Path partialFile = directory.resolve(key + PARTIAL_SUFFIX);
+                RangedDownloader downloader = new RangedDownloader(url, partialFile, connections, progressCallback);
+                downloader.setBandwidthLimiter(bandwidthLimiter);
+                downloader.download();
+                byte[] sha256 = downloader.getSha256();
+                String hash = HexFormat.of().formatHex(sha256);
+                Path entry = directory.resolve(hash + ENTRY_SUFFIX);
+                UpdateUtil.moveAtomically(partialFile, entry);
+                Files.writeString(directory.resolve(key + REFERENCE_SUFFIX), hash, StandardCharsets.UTF_8);
+                UpdateUtil.linkFileAtomically(entry, target);
+                removeExpiredEntries();
+                return sha256;
+            }
+        }
+    }
+
+    /**
+     * Removes the cached file for a URL, ie after it failed verification.
+     */
+    void evict(String url) {
+        String key = getKey(url);
+        Path lockFile = directory.resolve(key + LOCK_SUFFIX);
+        synchronized (processLocks.computeIfAbsent(lockFile, path -> new Object())) {
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = lock(channel)) {
+                if (lock == null) {
+                    ZLogger.log("Timed out waiting for download cache, failed to remove: " + url);
+                    return;
+                }
+                Path reference = directory.resolve(key + REFERENCE_SUFFIX);
+                if (!Files.exists(reference)) return;
+                String hash = Files.readString(reference, StandardCharsets.UTF_8).trim();
+                Files.delete(reference);
+                Files.deleteIfExists(directory.resolve(hash + ENTRY_SUFFIX));
+                ZLogger.log("Removed download from cache: " + url);
+            } catch (IOException e) {
+                ZLogger.log("Failed to remove download from cache: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Waits for the lock, giving up after {@link #LOCK_TIMEOUT_MS} so a stuck process can't block updates forever.
+     *
+     * @return The lock, or null if the wait timed out
+     */
+    private static FileLock lock(FileChannel channel) throws IOException {
+        FileLock lock = channel.tryLock();
+        if (lock != null) return lock;
+        ZLogger.log("Waiting for another process to finish downloading...");
+        long deadline = System.currentTimeMillis() + LOCK_TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(LOCK_RETRY_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            lock = channel.tryLock();
+            if (lock != null) return lock;
+        }
+        return null;
+    }
+
+    /**
+     * Links or copies a cached file if it matches the published checksum, or the published size if there is no checksum.
+     * Files with neither are downloaded again, since the cache alone can't vouch for them.
+     *
+     * @return The hash of the file, or null if it isn't cached or doesn't match
+     */
+    private byte[] copyCachedEntry(String key, Path target, long expectedSize, Supplier<String> expectedSha256) throws IOException {
+        Path reference = directory.resolve(key + REFERENCE_SUFFIX);
+        if (!Files.exists(reference)) return null;
+        String hash = Files.readString(reference, StandardCharsets.UTF_8).trim();
+        Path entry = directory.resolve(hash + ENTRY_SUFFIX);
+        if (!Files.exists(entry)) return null;
+        String expected = expectedSha256 == null ? null : expectedSha256.get();
+        if (expected == null && (expectedSize <= 0 || Files.size(entry) != expectedSize)) return null;
+        byte[] sha256 = UpdateUtil.hash(entry);
+        String actual = HexFormat.of().formatHex(sha256);
+        if (!actual.equals(hash) || (expected != null && !actual.equals(expected))) {
+            ZLogger.log("Cached download doesn't match, downloading again.");
+            Files.delete(entry);
+            return null;
+        }
+        UpdateUtil.linkFileAtomically(entry, target);
+        // Marks the entry as recently used
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        return sha256;
+    }
+
+    /**
+     * Deletes entries that haven't been used recently. Their references are left in place,
+     * since a reference to a missing entry is treated as not cached.
+     */
+    private void removeExpiredEntries() {
+        long cutoff = System.currentTimeMillis() - MAX_ENTRY_AGE_MS;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX)) {
+            for (Path entry : entries) {
+                if (Files.getLastModifiedTime(entry).toMillis() < cutoff) Files.deleteIfExists(entry);
+            }
+        } catch (IOException e) {
+            ZLogger.log("Failed to clean download cache: " + e.getMessage());
+        }
+    }
+
+    private static String getKey(String url) {
+        return HexFormat.of().formatHex(UpdateUtil.newDigest().digest(url.getBytes(StandardCharsets.UTF_8)));
+    }
+
+}
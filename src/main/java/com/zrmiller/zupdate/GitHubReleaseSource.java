@@ -0,0 +1,302 @@
+package com.zrmiller.zupdate;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.zrmiller.zupdate.data.ReleaseAsset;
+import com.zrmiller.zupdate.data.ReleaseVersion;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+/**
+ * Releases published on GitHub, fetched through the GitHub API.
+ * <p>
+ * The latest release is cached along with its ETag, so repeated checks can use conditional requests,
+ * which don't count against the API rate limit. When created by {@link UpdateManager}, the cache is kept in its save file.
+ * The first page of the release list is cached the same way in memory.
+ */
+public class GitHubReleaseSource implements IReleaseSource {
+
+    private static final int RELEASES_PER_PAGE = 100;
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    private final String LATEST_VERSION_URL;
+    private final String ALL_RELEASES_URL;
+
+    private UpdateSaveFile saveFile = new UpdateSaveFile();
+    private Runnable saveAction = () -> {
+    };
+    private long metadataCacheTTL = 0;
+    private ReleasePage firstPage;
+    private String firstPageEtag;
+    private long firstPageFetchTime;
+
+    private record ReleasePage(List<ReleaseVersion> releases, String nextURL) {
+
+    }
+
+    /**
+     * @param author GitHub author
+     * @param repo   GitHub repo name
+     */
+    public GitHubReleaseSource(String author, String repo) {
+        LATEST_VERSION_URL = "https://api.github.com/repos/" + author + "/" + repo + "/releases/latest";
+        ALL_RELEASES_URL = "https://api.github.com/repos/" + author + "/" + repo + "/releases";
+    }
+
+    /**
+     * Keeps the metadata cache in a save file, so it survives restarts.
+     *
+     * @param saveAction Writes the save file to disk
+     */
+    void setSaveFile(UpdateSaveFile saveFile, Runnable saveAction) {
+        this.saveFile = saveFile;
+        this.saveAction = saveAction;
+    }
+
+    /**
+     * Release info fetched within this many milliseconds is reused without contacting GitHub.
+     * Once expired, a conditional request is sent. Defaults to 0, always revalidating.
+     */
+    public void setMetadataCacheTTL(long milliseconds) {
+        metadataCacheTTL = Math.max(0, milliseconds);
+    }
+
+    /**
+     * Fetches the latest release, using the metadata cache when possible.
+     * Within the cache TTL the network isn't used at all. Otherwise a conditional request is sent,
+     * and a '304 Not Modified' response is served from the cache.
+     */
+    @Override
+    public CompletableFuture<ReleaseVersion> fetchLatestReleaseAsync() {
+        boolean cacheValid = LATEST_VERSION_URL.equals(saveFile.releaseURL) && saveFile.releaseJson != null;
+        if (cacheValid && System.currentTimeMillis() - saveFile.fetchTime < metadataCacheTTL) {
+            ZLogger.log("Using cached release info.");
+            UpdateMetrics.increment(UpdateMetrics.Counter.METADATA_CACHE_HITS);
+            return CompletableFuture.completedFuture(parseCachedRelease());
+        }
+        return fetchDataFromGitHubAsync(LATEST_VERSION_URL, cacheValid).thenApply(json -> {
+            if (json == null) return null;
+            try {
+                return new ReleaseVersion(json);
+            } catch (RuntimeException e) {
+                ZLogger.log("Failed to parse release info: " + e.getMessage());
+                return null;
+            }
+        });
+    }
+
+    private ReleaseVersion parseCachedRelease() {
+        try {
+            return new ReleaseVersion(JsonParser.parseString(saveFile.releaseJson));
+        } catch (RuntimeException e) {
+            ZLogger.log("Failed to parse cached release info.");
+            return null;
+        }
+    }
+
+    /**
+     * Lists every published release, newest first, following GitHub's pagination.
+     * The first page uses the metadata cache like {@link #fetchLatestReleaseAsync()}, so checking for new releases
+     * is usually a conditional request. Later pages are parsed as they stream in, keeping only the fields used by {@link ReleaseVersion}.
+     * Drafts and releases without any files are skipped.
+     */
+    @Override
+    public boolean listReleases(Predicate<ReleaseVersion> visitor) {
+        ReleasePage page = fetchFirstPage();
+        if (page == null) return false;
+        for (ReleaseVersion release : page.releases()) {
+            if (!visitor.test(release)) return true;
+        }
+        String url = page.nextURL();
+        while (url != null) {
+            try {
+                UpdateMetrics.increment(UpdateMetrics.Counter.METADATA_REQUESTS);
+                long requestStart = System.currentTimeMillis();
+                UpdateHttpEvent event = new UpdateHttpEvent();
+                event.begin();
+                HttpResponse<InputStream> response = HttpUtil.send(HttpUtil.newRequest(url).build(), HttpResponse.BodyHandlers.ofInputStream());
+                UpdateMetrics.record(UpdateMetrics.Histogram.METADATA_FETCH_MS, System.currentTimeMillis() - requestStart);
+                // Pages are parsed while streaming, so the event covers the time to receive response headers
+                event.record(url, "GET", response.statusCode(), response.headers().firstValueAsLong("Content-Length").orElse(-1), 1);
+                try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8)))) {
+                    if (response.statusCode() != HTTP_OK) {
+                        ZLogger.log("Failed to list releases, response code: " + response.statusCode());
+                        return false;
+                    }
+                    if (!visitPage(reader, visitor)) return true;
+                }
+                url = getNextPageURL(response.headers().firstValue("Link").orElse(null));
+            } catch (IOException | RuntimeException e) {
+                ZLogger.log("Failed to list releases: " + e.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return False if the visitor stopped listing
+     */
+    private static boolean visitPage(JsonReader reader, Predicate<ReleaseVersion> visitor) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            ReleaseVersion release = ReleaseVersion.read(reader);
+            if (release != null && !visitor.test(release)) return false;
+        }
+        reader.endArray();
+        return true;
+    }
+
+    /**
+     * Fetches the first page of the release list, which holds the newest releases.
+     * Within the cache TTL the cached page is used, otherwise a conditional request is sent.
+     * The page is parsed while streaming, and only the parsed releases are cached.
+     *
+     * @return The page, or null if the request failed
+     */
+    private synchronized ReleasePage fetchFirstPage() {
+        ReleasePage cached = firstPage;
+        if (cached != null && System.currentTimeMillis() - firstPageFetchTime < metadataCacheTTL) {
+            UpdateMetrics.increment(UpdateMetrics.Counter.METADATA_CACHE_HITS);
+            return cached;
+        }
+        String url = ALL_RELEASES_URL + "?per_page=" + RELEASES_PER_PAGE;
+        UpdateHttpEvent event = new UpdateHttpEvent();
+        int statusCode = -1;
+        long length = 0;
+        try {
+            HttpRequest.Builder request = HttpUtil.newRequest(url);
+            if (cached != null && firstPageEtag != null) request.header("If-None-Match", firstPageEtag);
+            UpdateMetrics.increment(UpdateMetrics.Counter.METADATA_REQUESTS);
+            long requestStart = System.currentTimeMillis();
+            event.begin();
+            HttpResponse<InputStream> response = HttpUtil.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            UpdateMetrics.record(UpdateMetrics.Histogram.METADATA_FETCH_MS, System.currentTimeMillis() - requestStart);
+            statusCode = response.statusCode();
+            length = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+            try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8)))) {
+                if (cached != null && statusCode == HTTP_NOT_MODIFIED) {
+                    UpdateMetrics.increment(UpdateMetrics.Counter.METADATA_CACHE_HITS);
+                    firstPageFetchTime = System.currentTimeMillis();
+                    return cached;
+                }
+                if (statusCode != HTTP_OK) {
+                    ZLogger.log("Failed to list releases, response code: " + statusCode);
+                    return null;
+                }
+                // The whole page is read even if the visitor stops early, so the cached page is complete
+                ArrayList<ReleaseVersion> releases = new ArrayList<>();
+                visitPage(reader, releases::add);
+                firstPage = new ReleasePage(Collections.unmodifiableList(releases), getNextPageURL(response.headers().firstValue("Link").orElse(null)));
+                firstPageEtag = response.headers().firstValue("ETag").orElse(null);
+                firstPageFetchTime = System.currentTimeMillis();
+                return firstPage;
+            }
+        } catch (IOException | RuntimeException e) {
+            ZLogger.log("Failed to list releases: " + e.getMessage());
+            return null;
+        } finally {
+            event.record(url, "GET", statusCode, length, 1);
+        }
+    }
+
+    @Override
+    public InputStream openAsset(ReleaseAsset asset) throws IOException {
+        return HttpUtil.openStream(asset.url());
+    }
+
+    /**
+     * Parses the next page from a GitHub 'Link' header, ie {@code <https://...?page=2>; rel="next", <...>; rel="last"}.
+     *
+     * @return The URL of the next page, or null if this is the last page
+     */
+    private static String getNextPageURL(String linkHeader) {
+        if (linkHeader == null) return null;
+        for (String link : linkHeader.split(",")) {
+            String[] parts = link.split(";");
+            if (parts.length < 2) continue;
+            for (int i = 1; i < parts.length; i++) {
+                if (!parts[i].trim().equals("rel=\"next\"")) continue;
+                String url = parts[0].trim();
+                if (url.startsWith("<") && url.endsWith(">")) return url.substring(1, url.length() - 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Fetches data from a GitHub API endpoint, optionally using the metadata cache.
+     * When caching, the response is stored in the save file along with its ETag.
+     *
+     * @param url         GitHub API endpoint
+     * @param conditional Send a conditional request, serving the cached response if it hasn't changed
+     * @return A future that completes with the JSON response, or null if request failed.
+     */
+    private CompletableFuture<JsonElement> fetchDataFromGitHubAsync(String url, boolean conditional) {
+        HttpRequest.Builder request;
+        try {
+            request = HttpUtil.newRequest(url).header("Accept", "application/vnd.github+json");
+        } catch (IOException e) {
+            ZLogger.log("Failed to fetch data from GitHub, bad URL: " + url);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (conditional) {
+            if (saveFile.etag != null) request.header("If-None-Match", saveFile.etag);
+            if (saveFile.lastModified != null) request.header("If-Modified-Since", saveFile.lastModified);
+        }
+        UpdateMetrics.increment(UpdateMetrics.Counter.METADATA_REQUESTS);
+        long requestStart = System.currentTimeMillis();
+        UpdateHttpEvent event = new UpdateHttpEvent();
+        event.begin();
+        return HttpUtil.getClient().sendAsync(request.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)).handle((response, throwable) -> {
+            UpdateMetrics.record(UpdateMetrics.Histogram.METADATA_FETCH_MS, System.currentTimeMillis() - requestStart);
+            if (throwable != null) event.record(url, "GET", -1, 0, 1);
+            else event.record(url, "GET", response.statusCode(), response.headers().firstValueAsLong("Content-Length").orElse(response.body().length()), 1);
+            if (throwable != null) {
+                ZLogger.log("Failed to connect to GitHub. This is either a connection issue or the API rate has been exceeded.");
+                return null;
+            }
+            if (conditional && response.statusCode() == HTTP_NOT_MODIFIED) {
+                ZLogger.log("Release info not modified, using cached response.");
+                UpdateMetrics.increment(UpdateMetrics.Counter.METADATA_CACHE_HITS);
+                saveFile.fetchTime = System.currentTimeMillis();
+                saveAction.run();
+                return JsonParser.parseString(saveFile.releaseJson);
+            }
+            if (response.statusCode() != HTTP_OK) {
+                ZLogger.log("Failed to connect to GitHub. This is either a connection issue or the API rate has been exceeded. Response code: " + response.statusCode());
+                return null;
+            }
+            try {
+                JsonElement json = JsonParser.parseString(response.body());
+                if (url.equals(LATEST_VERSION_URL)) {
+                    saveFile.releaseURL = url;
+                    saveFile.releaseJson = response.body();
+                    saveFile.etag = response.headers().firstValue("ETag").orElse(null);
+                    saveFile.lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+                    saveFile.fetchTime = System.currentTimeMillis();
+                    saveFile.tag = json.getAsJsonObject().get("tag_name").getAsString();
+                    saveAction.run();
+                }
+                return json;
+            } catch (RuntimeException e) {
+                ZLogger.log("Failed to fetch data from GitHub.");
+                return null;
+            }
+        });
+    }
+
+}
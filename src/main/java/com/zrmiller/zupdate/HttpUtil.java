@@ -0,0 +1,76 @@
+package com.zrmiller.zupdate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * A single HTTP client shared by all update requests, so connections are kept alive and reused.
+ * Uses HTTP/2 when the server supports it.
+ */
+public class HttpUtil {
+
+    private static final String USER_AGENT = "ZUpdater";
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final int HTTP_OK = 200;
+
+    private static final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .build();
+
+    private HttpUtil() {
+
+    }
+
+    public static HttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * @return A GET request builder with headers common to all requests
+     * @throws IOException If the URL is malformed
+     */
+    public static HttpRequest.Builder newRequest(String url) throws IOException {
+        try {
+            return HttpRequest.newBuilder(URI.create(url)).header("User-Agent", USER_AGENT);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Bad URL: " + url, e);
+        }
+    }
+
+    /**
+     * Sends a request, blocking until the response headers are received.
+     *
+     * @throws IOException If the request failed or the thread was interrupted
+     */
+    public static <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+        try {
+            return client.send(request, bodyHandler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request interrupted: " + request.uri());
+        }
+    }
+
+    /**
+     * Sends a GET request and returns the response body for reading.
+     *
+     * @throws IOException If the request failed or the response code wasn't 200
+     */
+    public static InputStream openStream(String url) throws IOException {
+        HttpResponse<InputStream> response = send(newRequest(url).build(), HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() != HTTP_OK) {
+            response.body().close();
+            throw new IOException("Request failed, response code: " + response.statusCode() + ", URL: " + url);
+        }
+        return response.body();
+    }
+
+}
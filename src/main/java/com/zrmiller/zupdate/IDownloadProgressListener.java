@@ -0,0 +1,14 @@
+package com.zrmiller.zupdate;
+
+import com.zrmiller.zupdate.data.TransferProgress;
+
+/**
+ * Detailed download progress, including speed and time remaining.
+ * Called on the EventDispatchThread, at most as often as {@link UpdateManager#setMaxProgressRate(int)} allows.
+ * Use {@link IUpdateProgressListener} for completion and failure callbacks.
+ */
+public interface IDownloadProgressListener {
+
+    void onTransferProgress(TransferProgress progress);
+
+}
@@ -0,0 +1,42 @@
+package com.zrmiller.zupdate;
+
+import com.zrmiller.zupdate.data.ReleaseAsset;
+import com.zrmiller.zupdate.data.ReleaseVersion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+/**
+ * Where releases are listed and downloaded from, ie GitHub, a mirror on the local network, or a directory.
+ * Asset URLs can be http(s) or file URLs, both are supported by {@link RangedDownloader}.
+ *
+ * @see GitHubReleaseSource
+ * @see MirrorReleaseSource
+ * @see DirectoryReleaseSource
+ */
+public interface IReleaseSource {
+
+    /**
+     * Fetches the newest release that isn't a pre-release.
+     *
+     * @return A future that completes with the release, or null if the request failed
+     */
+    CompletableFuture<ReleaseVersion> fetchLatestReleaseAsync();
+
+    /**
+     * Lists every published release, newest first.
+     *
+     * @param visitor Called for each release, return false to stop listing
+     * @return False if a request failed before listing finished
+     */
+    boolean listReleases(Predicate<ReleaseVersion> visitor);
+
+    /**
+     * Opens a small asset for reading, ie a checksum file.
+     * Large files should be downloaded with {@link RangedDownloader} instead.
+     */
+    InputStream openAsset(ReleaseAsset asset) throws IOException;
+
+}
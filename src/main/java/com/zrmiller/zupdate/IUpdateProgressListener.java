@@ -13,4 +13,13 @@ public interface IUpdateProgressListener {
 
     void onDownloadFailed();
 
+    /**
+     * Called when a downloaded JAR is corrupt or can't be launched. Followed by {@link #onDownloadFailed()}.
+     *
+     * @param reason Description of the first problem found
+     */
+    default void onVerificationFailed(String reason) {
+
+    }
+
 }
@@ -0,0 +1,213 @@
+package com.zrmiller.zupdate;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Rebuilds a new JAR from an old JAR, transferring only the entries that changed.
+ * <p>
+ * A release publishes two assets next to the JAR:
+ * <ul>
+ *     <li>{@code <name>.entries.json} - The version and SHA-256 hash of the JAR the archive was built against,
+ *     and every entry name in the new JAR mapped to the SHA-256 hash of its contents</li>
+ *     <li>{@code <name>.entries.zip} - An archive containing the entries that changed since the previous release</li>
+ * </ul>
+ * The base in the manifest is checked before the archive is downloaded, since the archive is missing entries for any other JAR.
+ * Entries whose hash matches the old JAR are copied from the old JAR, the rest are taken from the archive.
+ * Every entry is verified against the manifest as it's written.
+ */
+public class JarEntryPatch {
+
+    public static final String MANIFEST_SUFFIX = ".entries.json";
+    public static final String ARCHIVE_SUFFIX = ".entries.zip";
+
+    private static final String BASE_VERSION_KEY = "baseVersion";
+    private static final String BASE_SHA256_KEY = "baseSha256";
+    private static final String ENTRIES_KEY = "entries";
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    /**
+     * @param baseVersion Version of the JAR the archive was built against
+     * @param baseSha256  Lowercase hex SHA-256 hash of the JAR the archive was built against
+     * @param entries     Entry names mapped to hashes, in the order they should be written
+     */
+    public record EntryManifest(String baseVersion, String baseSha256, LinkedHashMap<String, String> entries) {
+
+        /**
+         * @param sha256 Hash of the JAR file
+         * @return True if the archive was built against this version and JAR
+         */
+        public boolean matchesBase(String version, byte[] sha256) {
+            return baseVersion.equals(version) && baseSha256.equals(HexFormat.of().formatHex(sha256));
+        }
+
+    }
+
+    private JarEntryPatch() {
+
+    }
+
+    /**
+     * Reads the entry manifest of a release.
+     */
+    public static EntryManifest readManifest(Path manifest) throws IOException {
+        try (Reader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
+            LinkedHashMap<String, String> entries = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject(ENTRIES_KEY).entrySet()) {
+                entries.put(entry.getKey(), entry.getValue().getAsString());
+            }
+            return new EntryManifest(json.get(BASE_VERSION_KEY).getAsString(), json.get(BASE_SHA256_KEY).getAsString(), entries);
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid entry manifest: " + manifest, e);
+        }
+    }
+
+    /**
+     * Hashes every entry in a JAR file.
+     *
+     * @return Entry names mapped to hashes, in the order they appear in the JAR
+     */
+    public static LinkedHashMap<String, String> hashEntries(Path jar) throws IOException {
+        LinkedHashMap<String, String> entries = new LinkedHashMap<>();
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+            while (enumeration.hasMoreElements()) {
+                ZipEntry entry = enumeration.nextElement();
+                try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                    entries.put(entry.getName(), hash(inputStream.readAllBytes()));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Lists the entries of the new JAR that can't be copied from the old JAR.
+     *
+     * @param manifest   Entries of the new JAR
+     * @param oldEntries Entries of the old JAR
+     */
+    public static HashMap<String, String> findChangedEntries(Map<String, String> manifest, Map<String, String> oldEntries) {
+        HashMap<String, String> changed = new HashMap<>();
+        for (Map.Entry<String, String> entry : manifest.entrySet()) {
+            if (!entry.getValue().equals(oldEntries.get(entry.getKey()))) changed.put(entry.getKey(), entry.getValue());
+        }
+        return changed;
+    }
+
+    /**
+     * Writes the new JAR by merging unchanged entries from the old JAR with changed entries from the archive.
+     *
+     * @param oldJar     The currently running JAR
+     * @param oldEntries Entries of the old JAR, from {@link #hashEntries(Path)}
+     * @param manifest   Entries of the new JAR
+     * @param archive    Archive containing changed entries
+     * @param output     Location to write the new JAR
+     * @throws IOException If an entry is missing or doesn't match its hash
+     */
+    public static void merge(Path oldJar, Map<String, String> oldEntries, Map<String, String> manifest, Path archive, Path output) throws IOException {
+        try (ZipFile oldZip = new ZipFile(oldJar.toFile());
+             ZipFile archiveZip = new ZipFile(archive.toFile());
+             ZipOutputStream outputStream = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(output)))) {
+            for (Map.Entry<String, String> manifestEntry : manifest.entrySet()) {
+                String name = manifestEntry.getKey();
+                String expectedHash = manifestEntry.getValue();
+                ZipFile sourceZip = expectedHash.equals(oldEntries.get(name)) ? oldZip : archiveZip;
+                ZipEntry sourceEntry = sourceZip.getEntry(name);
+                if (sourceEntry == null) throw new IOException("Missing entry in update archive: " + name);
+                byte[] data;
+                try (InputStream inputStream = sourceZip.getInputStream(sourceEntry)) {
+                    data = inputStream.readAllBytes();
+                }
+                if (!expectedHash.equals(hash(data))) throw new IOException("Entry failed verification: " + name);
+                outputStream.putNextEntry(copyEntryInfo(sourceEntry, data));
+                outputStream.write(data);
+                outputStream.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Writes the entry manifest for a JAR. Used when publishing a release.
+     *
+     * @param oldJar     The JAR the archive is built against
+     * @param oldVersion Version of the old JAR, ie v1.0.0
+     * @param newJar     The JAR being released
+     */
+    public static void createManifest(Path oldJar, String oldVersion, Path newJar, Path manifest) throws IOException {
+        JsonObject json = new JsonObject();
+        json.addProperty(BASE_VERSION_KEY, oldVersion);
+        json.addProperty(BASE_SHA256_KEY, HexFormat.of().formatHex(UpdateUtil.hash(oldJar)));
+        json.add(ENTRIES_KEY, gson.toJsonTree(hashEntries(newJar)));
+        try (Writer writer = Files.newBufferedWriter(manifest, StandardCharsets.UTF_8)) {
+            gson.toJson(json, writer);
+        }
+    }
+
+    /**
+     * Writes an archive of the entries that changed between two JARs. Used when publishing a release.
+     */
+    public static void createArchive(Path oldJar, Path newJar, Path archive) throws IOException {
+        HashMap<String, String> changed = findChangedEntries(hashEntries(newJar), hashEntries(oldJar));
+        try (ZipFile newZip = new ZipFile(newJar.toFile());
+             ZipOutputStream outputStream = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(archive)))) {
+            outputStream.setLevel(9);
+            Enumeration<? extends ZipEntry> enumeration = newZip.entries();
+            while (enumeration.hasMoreElements()) {
+                ZipEntry entry = enumeration.nextElement();
+                if (!changed.containsKey(entry.getName())) continue;
+                byte[] data;
+                try (InputStream inputStream = newZip.getInputStream(entry)) {
+                    data = inputStream.readAllBytes();
+                }
+                outputStream.putNextEntry(copyEntryInfo(entry, data));
+                outputStream.write(data);
+                outputStream.closeEntry();
+            }
+        }
+    }
+
+    // Compressed size can't be copied, since the entry is recompressed when written
+    private static ZipEntry copyEntryInfo(ZipEntry source, byte[] data) {
+        ZipEntry entry = new ZipEntry(source.getName());
+        entry.setTime(source.getTime());
+        if (source.getExtra() != null) entry.setExtra(source.getExtra());
+        if (source.getComment() != null) entry.setComment(source.getComment());
+        if (source.getMethod() == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(data.length);
+            entry.setCompressedSize(data.length);
+            entry.setCrc(crc.getValue());
+        }
+        return entry;
+    }
+
+    private static String hash(byte[] data) {
+        return HexFormat.of().formatHex(UpdateUtil.newDigest().digest(data));
+    }
+
+}
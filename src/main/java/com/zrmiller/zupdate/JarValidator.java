@@ -0,0 +1,153 @@
+package com.zrmiller.zupdate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+
+/**
+ * Checks that a downloaded JAR is complete and runnable before it replaces the installed program.
+ * <p>
+ * Opening the JAR reads the zip central directory, so truncated downloads fail immediately.
+ * Every entry is then decompressed and checked against the CRC and size in the central directory,
+ * split across a fork-join pool. The manifest must name a Main-Class that exists in the JAR,
+ * and if the JAR is signed, every entry must be covered by a valid signature.
+ */
+public class JarValidator {
+
+    private static final String META_INF = "META-INF/";
+    private static final String[] SIGNATURE_SUFFIXES = {".SF", ".RSA", ".DSA", ".EC"};
+    // Small enough to balance work across threads, large enough that each task reads a meaningful amount
+    private static final int MIN_ENTRIES_PER_TASK = 16;
+    private static final int TASKS_PER_THREAD = 4;
+    private static final int BUFFER_SIZE = 8192;
+
+    private JarValidator() {
+
+    }
+
+    /**
+     * Validates a JAR using the common fork-join pool.
+     *
+     * @throws IOException Describing the first problem found
+     */
+    public static void validate(Path jar) throws IOException {
+        validate(jar, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool Pool used to check entries in parallel
+     * @throws IOException Describing the first problem found
+     */
+    public static void validate(Path jar, ForkJoinPool pool) throws IOException {
+        List<String> entryNames = new ArrayList<>();
+        boolean signed = false;
+        try (JarFile jarFile = new JarFile(jar.toFile(), true)) {
+            Manifest manifest = jarFile.getManifest();
+            if (manifest == null) throw new IOException("JAR has no manifest.");
+            String mainClass = manifest.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS);
+            if (mainClass == null || mainClass.isBlank()) throw new IOException("Manifest has no Main-Class.");
+            String mainClassEntry = mainClass.trim().replace('.', '/') + ".class";
+            if (jarFile.getEntry(mainClassEntry) == null) throw new IOException("Main-Class not found: " + mainClass);
+            for (JarEntry entry : Collections.list(jarFile.entries())) {
+                entryNames.add(entry.getName());
+                if (isSignatureFile(entry.getName())) signed = true;
+            }
+        } catch (SecurityException e) {
+            throw new IOException("Invalid JAR signature: " + e.getMessage(), e);
+        }
+        int threshold = Math.max(MIN_ENTRIES_PER_TASK, entryNames.size() / (pool.getParallelism() * TASKS_PER_THREAD));
+        try {
+            pool.invoke(new EntryTask(jar, entryNames, 0, entryNames.size(), threshold, signed));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static boolean isSignatureFile(String name) {
+        if (!name.startsWith(META_INF) || name.indexOf('/', META_INF.length()) != -1) return false;
+        String upperName = name.toUpperCase(Locale.ROOT);
+        for (String suffix : SIGNATURE_SUFFIXES) if (upperName.endsWith(suffix)) return true;
+        return false;
+    }
+
+    /**
+     * Checks a range of entries, splitting in half until the range is small enough.
+     * Each task opens its own JarFile, since signature verification state can't be shared between threads.
+     * Tasks are never serialized, they're only Serializable through ForkJoinTask.
+     */
+    @SuppressWarnings("serial")
+    private static class EntryTask extends RecursiveAction {
+
+        private final Path jar;
+        private final List<String> entryNames;
+        private final int start;
+        private final int end;
+        private final int threshold;
+        private final boolean signed;
+
+        private EntryTask(Path jar, List<String> entryNames, int start, int end, int threshold, boolean signed) {
+            this.jar = jar;
+            this.entryNames = entryNames;
+            this.start = start;
+            this.end = end;
+            this.threshold = threshold;
+            this.signed = signed;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > threshold) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new EntryTask(jar, entryNames, start, middle, threshold, signed),
+                        new EntryTask(jar, entryNames, middle, end, threshold, signed));
+                return;
+            }
+            try (JarFile jarFile = new JarFile(jar.toFile(), signed)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                CRC32 crc = new CRC32();
+                for (int i = start; i < end; i++) {
+                    JarEntry entry = jarFile.getJarEntry(entryNames.get(i));
+                    if (entry == null) throw new IOException("Missing entry: " + entryNames.get(i));
+                    checkEntry(jarFile, entry, buffer, crc);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (SecurityException e) {
+                throw new UncheckedIOException(new IOException("Invalid JAR signature: " + e.getMessage(), e));
+            }
+        }
+
+        private void checkEntry(JarFile jarFile, JarEntry entry, byte[] buffer, CRC32 crc) throws IOException {
+            crc.reset();
+            long size = 0;
+            try (InputStream inputStream = jarFile.getInputStream(entry)) {
+                int count;
+                while ((count = inputStream.read(buffer)) != -1) {
+                    crc.update(buffer, 0, count);
+                    size += count;
+                }
+            }
+            if (entry.getSize() != -1 && entry.getSize() != size)
+                throw new IOException("Size mismatch: " + entry.getName());
+            if (entry.getCrc() != -1 && entry.getCrc() != crc.getValue())
+                throw new IOException("CRC mismatch: " + entry.getName());
+            // Signers are only known once the entry has been fully read
+            if (signed && !entry.isDirectory() && !entry.getName().startsWith(META_INF) && entry.getCodeSigners() == null)
+                throw new IOException("Unsigned entry in signed JAR: " + entry.getName());
+        }
+
+    }
+
+}
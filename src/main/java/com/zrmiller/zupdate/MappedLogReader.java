@@ -0,0 +1,85 @@
+package com.zrmiller.zupdate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Converts a log file written in mapped mode back to the regular text log format.
+ * Compressed (rolled) files are supported. Reading stops at the last complete record.
+ * <p>
+ * Usage: {@code java -cp <jar> com.zrmiller.zupdate.MappedLogReader <log file> [output file]}
+ */
+public class MappedLogReader {
+
+    private MappedLogReader() {
+
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: MappedLogReader <log file> [output file]");
+            System.exit(1);
+        }
+        Path input = Paths.get(args[0]);
+        try (Writer output = args.length > 1
+                ? Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            int count = convert(input, output);
+            if (args.length > 1) System.out.println("Converted " + count + " log records.");
+        } catch (IOException e) {
+            System.err.println("Failed to read log file: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Writes each record in a mapped log file as a text log line.
+     *
+     * @return Number of records read
+     */
+    public static int convert(Path mappedLog, Writer output) throws IOException {
+        InputStream fileStream = Files.newInputStream(mappedLog);
+        if (mappedLog.toString().endsWith(".gz")) fileStream = new GZIPInputStream(fileStream);
+        int count = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(fileStream))) {
+            if (input.readInt() != MappedLogSink.MAGIC) throw new IOException("Not a mapped log file: " + mappedLog);
+            input.readInt();
+            long position = MappedLogSink.HEADER_SIZE;
+            while (true) {
+                int chunkRemaining = (int) (MappedLogSink.CHUNK_SIZE - position % MappedLogSink.CHUNK_SIZE);
+                int length = chunkRemaining >= 4 ? input.readInt() : MappedLogSink.CHUNK_END;
+                if (length == MappedLogSink.CHUNK_END) {
+                    // Rest of the chunk is unused, records continue at the start of the next one
+                    int skip = chunkRemaining >= 4 ? chunkRemaining - 4 : chunkRemaining;
+                    input.skipNBytes(skip);
+                    position += chunkRemaining;
+                    continue;
+                }
+                // A length of 0 is the end of the log, anything else invalid is an incomplete record
+                if (length < MappedLogSink.RECORD_HEADER_SIZE - 4 || length > chunkRemaining - 4) break;
+                long time = input.readLong();
+                input.readBoolean();
+                byte[] message = new byte[length - (MappedLogSink.RECORD_HEADER_SIZE - 4)];
+                input.readFully(message);
+                output.write(ZLogger.formatTimestamp(time) + " | " + new String(message, StandardCharsets.UTF_8) + "\n");
+                position += 4 + length;
+                count++;
+            }
+        } catch (EOFException e) {
+            // The file ended without an end marker, every complete record has been read
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.zrmiller.zupdate;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A log file written through a memory mapping, used by {@link ZLogger} in mapped mode.
+ * <p>
+ * Writing a record is just a memory copy. The operating system owns the mapped pages,
+ * so every record that was written survives the JVM crashing or exiting without closing the log.
+ * The file is mapped in preallocated chunks, and grows by mapping the next chunk when one fills up.
+ * <p>
+ * File format: a header, followed by records of {@code [int length][long time][byte error][UTF-8 message]},
+ * where length covers everything after the length field. A length of 0 marks the end of the log,
+ * and {@link #CHUNK_END} marks the unused end of a chunk. The length is written last,
+ * so a record interrupted by a crash is never read. Use {@link MappedLogReader} to convert a file to text.
+ */
+class MappedLogSink {
+
+    static final int MAGIC = 0x5A4C4F47; // "ZLOG"
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 4 + 8 + 1;
+    static final int CHUNK_SIZE = 1024 * 1024;
+    static final int CHUNK_END = -1;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long chunkStart;
+
+    /**
+     * Opens a mapped log file, continuing after the last record if it already exists.
+     */
+    MappedLogSink(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean newFile = channel.size() == 0;
+        mapChunk(0);
+        if (newFile) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            buffer.position(HEADER_SIZE);
+            return;
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException("Not a mapped log file: " + path);
+        }
+        seekToEnd();
+    }
+
+    /**
+     * Appends a record. Messages larger than a chunk are truncated.
+     *
+     * @return Number of bytes used by the record
+     */
+    int append(long time, String message, boolean error) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        int maxMessageSize = CHUNK_SIZE - RECORD_HEADER_SIZE - 4;
+        int messageSize = Math.min(bytes.length, maxMessageSize);
+        int recordSize = RECORD_HEADER_SIZE + messageSize;
+        // Keep room for an end marker after every record
+        if (buffer.remaining() < recordSize + 4) {
+            if (buffer.remaining() >= 4) buffer.putInt(buffer.position(), CHUNK_END);
+            mapChunk(chunkStart + CHUNK_SIZE);
+        }
+        int position = buffer.position();
+        buffer.position(position + 4);
+        buffer.putLong(time);
+        buffer.put((byte) (error ? 1 : 0));
+        buffer.put(bytes, 0, messageSize);
+        buffer.putInt(position, recordSize - 4);
+        return recordSize;
+    }
+
+    /**
+     * @return Number of bytes used by the header and records
+     */
+    long size() {
+        return chunkStart + buffer.position();
+    }
+
+    /**
+     * Writes mapped pages to disk. Not needed to survive a JVM crash, only an operating system crash.
+     */
+    void flush() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private void mapChunk(long start) throws IOException {
+        chunkStart = start;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, start, CHUNK_SIZE);
+    }
+
+    private void seekToEnd() throws IOException {
+        int position = HEADER_SIZE;
+        while (true) {
+            int length = position + 4 <= CHUNK_SIZE ? buffer.getInt(position) : CHUNK_END;
+            if (length == CHUNK_END) {
+                mapChunk(chunkStart + CHUNK_SIZE);
+                position = 0;
+                continue;
+            }
+            if (length <= 0 || position + 4 + length > CHUNK_SIZE) break;
+            position += 4 + length;
+        }
+        buffer.position(position);
+    }
+
+}
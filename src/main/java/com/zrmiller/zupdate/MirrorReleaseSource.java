@@ -0,0 +1,39 @@
+package com.zrmiller.zupdate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Releases served by a plain HTTP server, ie a cache on the local network.
+ * The server only needs to serve static files, see {@link StaticReleaseSource} for the layout.
+ * Range requests are used for parallel and resumed downloads if the server supports them.
+ */
+public class MirrorReleaseSource extends StaticReleaseSource {
+
+    private final String baseURL;
+
+    /**
+     * @param baseURL URL of the directory containing releases.json, ie http://updates.lan/app/
+     */
+    public MirrorReleaseSource(String baseURL) {
+        this.baseURL = baseURL.endsWith("/") ? baseURL : baseURL + "/";
+    }
+
+    @Override
+    InputStream openFile(String path) throws IOException {
+        return HttpUtil.openStream(baseURL + path);
+    }
+
+    @Override
+    String getAssetURL(String tag, String name) {
+        return baseURL + encodePathSegment(tag) + "/" + encodePathSegment(name);
+    }
+
+    // URLEncoder targets form data, which encodes spaces as '+' instead of '%20'
+    private static String encodePathSegment(String segment) {
+        return URLEncoder.encode(segment, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.zrmiller.zupdate;
+
+import com.zrmiller.zupdate.data.TransferProgress;
+
+import javax.swing.*;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Turns raw byte counts from download threads into {@link TransferProgress} updates on the EventDispatchThread.
+ * <p>
+ * Updates are coalesced: at most one is queued on the EventDispatchThread at a time, and updates arriving
+ * faster than the max rate are skipped, with the dispatched update always carrying the latest byte count.
+ * Completion is always reported, and the final update is flushed when a download ends, even if its size is unknown.
+ * Speed is an exponentially weighted moving average of short samples.
+ */
+class ProgressReporter implements RangedDownloader.IProgressCallback {
+
+    private static final long SAMPLE_INTERVAL_MS = 100;
+    private static final double SMOOTHING = 0.3;
+
+    private final Consumer<TransferProgress> dispatcher;
+    private final LongSupplier rateLimit;
+    private long minIntervalMs;
+
+    private long lastDispatch;
+    private boolean dispatchQueued;
+    private TransferProgress latest;
+    private TransferProgress dispatched;
+
+    private long lastBytes;
+    private long totalBytes;
+    private long sampleStart;
+    private long sampleBytes;
+    private double bytesPerSecond;
+
+    /**
+     * @param dispatcher Receives progress on the EventDispatchThread
+     * @param maxRate    Maximum updates per second
+     * @param rateLimit  Current download speed limit, 0 if unlimited
+     */
+    ProgressReporter(Consumer<TransferProgress> dispatcher, int maxRate, LongSupplier rateLimit) {
+        this.dispatcher = dispatcher;
+        this.rateLimit = rateLimit;
+        setMaxRate(maxRate);
+        reset();
+    }
+
+    synchronized void setMaxRate(int maxRate) {
+        minIntervalMs = 1000 / Math.max(1, maxRate);
+    }
+
+    /**
+     * Starts measuring a new download.
+     */
+    synchronized void reset() {
+        lastBytes = 0;
+        totalBytes = -1;
+        sampleStart = System.currentTimeMillis();
+        sampleBytes = 0;
+        bytesPerSecond = 0;
+        lastDispatch = 0;
+    }
+
+    /**
+     * Called from download threads.
+     *
+     * @param totalBytes Size of the download, or -1 if unknown
+     */
+    @Override
+    public synchronized void onProgress(long bytesDownloaded, long totalBytes) {
+        long now = System.currentTimeMillis();
+        // A new download started, ie a full download after a failed patch
+        if (bytesDownloaded < lastBytes || totalBytes != this.totalBytes) {
+            reset();
+            this.totalBytes = totalBytes;
+            // A resumed download starts part way through, which shouldn't count towards speed
+            sampleBytes = bytesDownloaded;
+        }
+        lastBytes = bytesDownloaded;
+        long sampleTime = now - sampleStart;
+        if (sampleTime >= SAMPLE_INTERVAL_MS) {
+            double sampleRate = (bytesDownloaded - sampleBytes) * 1000d / sampleTime;
+            bytesPerSecond = bytesPerSecond == 0 ? sampleRate : SMOOTHING * sampleRate + (1 - SMOOTHING) * bytesPerSecond;
+            sampleStart = now;
+            sampleBytes = bytesDownloaded;
+        }
+        long eta = totalBytes > 0 && bytesPerSecond > 0 ? Math.round((totalBytes - bytesDownloaded) / bytesPerSecond * 1000) : -1;
+        latest = new TransferProgress(bytesDownloaded, totalBytes, bytesPerSecond, eta, rateLimit.getAsLong());
+        if (dispatchQueued) return;
+        if (now - lastDispatch < minIntervalMs && !latest.isComplete()) return;
+        dispatchQueued = true;
+        lastDispatch = now;
+        SwingUtilities.invokeLater(this::dispatch);
+    }
+
+    /**
+     * Dispatches the latest progress if it was skipped by the rate limit.
+     * Completion can't be detected without the total size, so downloads call this when they end, including on errors.
+     */
+    synchronized void finish() {
+        if (latest == null || latest == dispatched || dispatchQueued) return;
+        dispatchQueued = true;
+        lastDispatch = System.currentTimeMillis();
+        SwingUtilities.invokeLater(this::dispatch);
+    }
+
+    @Override
+    public void onFinish() {
+        finish();
+    }
+
+    private void dispatch() {
+        TransferProgress progress;
+        synchronized (this) {
+            progress = latest;
+            dispatched = progress;
+            dispatchQueued = false;
+        }
+        dispatcher.accept(progress);
+    }
+
+}
@@ -0,0 +1,483 @@
+package com.zrmiller.zupdate;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.zrmiller.zupdate.data.DownloadState;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Downloads a file by splitting it into HTTP range requests that are fetched in parallel.
+ * Progress is saved next to the target file, so an interrupted download resumes where it left off,
+ * both after a dropped connection and after a program restart.
+ * Falls back to a single stream if the server doesn't support range requests.
+ * File URLs, ie a release on a network drive, are copied directly.
+ * <p>
+ * The SHA-256 hash of the file is computed while downloading. A single stream is hashed as bytes stream in.
+ * Segments are hashed as the start of the file fills in: bytes that extend the downloaded prefix are hashed
+ * directly, while bytes of later segments are read back once the prefix reaches them, usually from the OS page cache.
+ * Parallel downloads therefore read each byte after the first segment once more, but never reread the whole file
+ * after the download.
+ */
+public class RangedDownloader {
+
+    static final String STATE_FILE_SUFFIX = ".download.json";
+
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 16;
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+    private static final int MAX_SEGMENT_ATTEMPTS = 5;
+    private static final int SEGMENT_RETRY_DELAY_MS = 500;
+    private static final long STATE_SAVE_INTERVAL_MS = 1000;
+
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_PARTIAL = 206;
+
+    private static final Gson gson = new Gson();
+
+    private final String url;
+    private final Path target;
+    private final Path stateFile;
+    private final int connections;
+    private final IProgressCallback progressCallback;
+
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private BandwidthLimiter bandwidthLimiter;
+    private DownloadState state;
+    private long totalBytes;
+    private long bytesDownloaded;
+    private long lastStateSave;
+    private long downloadStart;
+    private long sessionBytes;
+    private MessageDigest digest;
+    private byte[] sha256;
+    // Segment downloads hash the contiguous prefix of the file, guarded by the hash lock
+    private final ReentrantLock hashLock = new ReentrantLock();
+    private long hashedBytes;
+
+    /**
+     * Receives progress updates from download threads.
+     */
+    public interface IProgressCallback {
+
+        // Total bytes is -1 if the size of the file is unknown
+        void onProgress(long bytesDownloaded, long totalBytes);
+
+        /**
+         * Called once when the download ends, successfully or not, after the last progress update.
+         */
+        default void onFinish() {
+
+        }
+
+    }
+
+    /**
+     * @param url              URL of the file to download
+     * @param target           Location to save the file
+     * @param connections      Maximum number of parallel connections
+     * @param progressCallback Receives progress updates, can be called from multiple threads
+     */
+    public RangedDownloader(String url, Path target, int connections, IProgressCallback progressCallback) {
+        this.url = url;
+        this.target = target;
+        this.stateFile = Paths.get(target + STATE_FILE_SUFFIX);
+        this.connections = Math.max(1, connections);
+        this.progressCallback = progressCallback;
+    }
+
+    /**
+     * Size of the buffer each connection reads into. Exposed for benchmarks.
+     */
+    void setBufferSize(int bufferSize) {
+        this.bufferSize = Math.max(1024, bufferSize);
+    }
+
+    /**
+     * Limits the download speed. The limiter is shared by every connection, and can be shared with other downloads.
+     *
+     * @param bandwidthLimiter Limiter to use, or null for unlimited
+     */
+    public void setBandwidthLimiter(BandwidthLimiter bandwidthLimiter) {
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
+    /**
+     * Downloads the file, resuming a previous attempt if possible.
+     *
+     * @throws IOException If the download failed. Partial progress is kept for the next attempt.
+     */
+    public void download() throws IOException {
+        downloadStart = System.currentTimeMillis();
+        digest = null;
+        sha256 = null;
+        try {
+            probeAndDownload();
+        } catch (IOException | RuntimeException e) {
+            UpdateMetrics.increment(UpdateMetrics.Counter.DOWNLOADS_FAILED);
+            throw e;
+        } finally {
+            progressCallback.onFinish();
+        }
+        long elapsed = System.currentTimeMillis() - downloadStart;
+        UpdateMetrics.record(UpdateMetrics.Histogram.DOWNLOAD_MS, elapsed);
+        if (elapsed > 0) UpdateMetrics.record(UpdateMetrics.Histogram.DOWNLOAD_BYTES_PER_SECOND, sessionBytes * 1000 / elapsed);
+    }
+
+    private void probeAndDownload() throws IOException {
+        if (UpdateUtil.isFileURL(url)) {
+            copyLocalFile();
+            return;
+        }
+        HttpRequest probeRequest = HttpUtil.newRequest(url).method("HEAD", HttpRequest.BodyPublishers.noBody()).build();
+        UpdateHttpEvent event = new UpdateHttpEvent();
+        event.begin();
+        HttpResponse<Void> probe;
+        try {
+            probe = HttpUtil.send(probeRequest, HttpResponse.BodyHandlers.discarding());
+        } catch (IOException e) {
+            event.record(url, "HEAD", -1, 0, 1);
+            throw e;
+        }
+        int responseCode = probe.statusCode();
+        event.record(url, "HEAD", responseCode, 0, 1);
+        long size = probe.headers().firstValueAsLong("Content-Length").orElse(-1);
+        String acceptRanges = probe.headers().firstValue("Accept-Ranges").orElse(null);
+        String etag = probe.headers().firstValue("ETag").orElse(null);
+        String lastModified = probe.headers().firstValue("Last-Modified").orElse(null);
+        boolean supportsRanges = responseCode == HTTP_OK && size > 0
+                && acceptRanges != null && acceptRanges.toLowerCase().contains("bytes");
+        if (!supportsRanges) {
+            ZLogger.log("Server does not support range requests, downloading as a single stream.");
+            downloadSingleStream();
+            return;
+        }
+        try {
+            downloadSegments(size, etag, lastModified);
+        } catch (RangeRejectedException e) {
+            ZLogger.log("Server rejected range request, downloading as a single stream.");
+            Files.deleteIfExists(stateFile);
+            downloadSingleStream();
+        }
+    }
+
+    /**
+     * @return The SHA-256 hash of the downloaded file. Only reads the whole file if it couldn't be hashed while downloading.
+     */
+    public byte[] getSha256() throws IOException {
+        if (sha256 == null) sha256 = UpdateUtil.hash(target);
+        return sha256;
+    }
+
+    /**
+     * Downloads the entire file using a single connection. Can't be resumed.
+     */
+    private void downloadSingleStream() throws IOException {
+        digest = UpdateUtil.newDigest();
+        UpdateHttpEvent event = new UpdateHttpEvent();
+        event.begin();
+        int statusCode = -1;
+        bytesDownloaded = 0;
+        try {
+            HttpResponse<InputStream> response = HttpUtil.send(HttpUtil.newRequest(url).build(), HttpResponse.BodyHandlers.ofInputStream());
+            statusCode = response.statusCode();
+            if (statusCode != HTTP_OK) {
+                response.body().close();
+                throw new IOException("Download failed, response code: " + statusCode);
+            }
+            totalBytes = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+            transferStream(response.body());
+        } finally {
+            event.record(url, "GET", statusCode, bytesDownloaded, 1);
+        }
+    }
+
+    /**
+     * Copies a file from a local or network directory. The copy is fast enough that it isn't resumed.
+     */
+    private void copyLocalFile() throws IOException {
+        digest = UpdateUtil.newDigest();
+        bytesDownloaded = 0;
+        Path source = UpdateUtil.toPath(url);
+        totalBytes = Files.size(source);
+        transferStream(Files.newInputStream(source));
+    }
+
+    /**
+     * Writes an entire stream to the target file, hashing it along the way. Closes the stream.
+     */
+    private void transferStream(InputStream stream) throws IOException {
+        try (InputStream inputStream = stream;
+             OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(target))) {
+            byte[] data = new byte[bufferSize];
+            int numBytesRead;
+            while ((numBytesRead = inputStream.read(data, 0, bufferSize)) >= 0) {
+                outputStream.write(data, 0, numBytesRead);
+                digest.update(data, 0, numBytesRead);
+                throttle(numBytesRead);
+                addProgress(numBytesRead);
+            }
+        }
+        sha256 = digest.digest();
+    }
+
+    private void downloadSegments(long size, String etag, String lastModified) throws IOException {
+        state = loadState();
+        if (state != null && state.matches(url, size, etag, lastModified) && Files.exists(target) && Files.size(target) == size) {
+            ZLogger.log("Resuming download at " + state.getBytesDownloaded() + "/" + size + " bytes.");
+        } else {
+            state = createState(size, etag, lastModified);
+            try (RandomAccessFile file = new RandomAccessFile(target.toFile(), "rw")) {
+                file.setLength(size);
+            }
+        }
+        totalBytes = size;
+        bytesDownloaded = state.getBytesDownloaded();
+        digest = UpdateUtil.newDigest();
+        hashedBytes = 0;
+        progressCallback.onProgress(bytesDownloaded, totalBytes);
+        ExecutorService executor = Executors.newFixedThreadPool(state.segments.size(), runnable -> {
+            Thread thread = new Thread(runnable, "ZUpdate Download");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // A resumed download only streams the rest of the file, so the part already on disk is hashed first
+            hashLock.lock();
+            try {
+                hashDownloadedPrefix(channel);
+            } finally {
+                hashLock.unlock();
+            }
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for (DownloadState.Segment segment : state.segments) {
+                if (segment.isComplete()) continue;
+                futures.add(executor.submit(() -> {
+                    downloadSegment(segment, channel);
+                    return null;
+                }));
+            }
+            try {
+                for (Future<?> future : futures) future.get();
+            } catch (ExecutionException e) {
+                executor.shutdownNow();
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new IOException("Download interrupted.", e);
+            } finally {
+                channel.force(false);
+                saveState();
+            }
+            hashLock.lock();
+            try {
+                hashDownloadedPrefix(channel);
+                if (hashedBytes == totalBytes) sha256 = digest.digest();
+            } finally {
+                hashLock.unlock();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Files.deleteIfExists(stateFile);
+    }
+
+    /**
+     * Hashes bytes that were just written if they extend the hashed prefix, then catches up with any
+     * segments the prefix has reached. Skipped if another thread is hashing, since it will pick up these bytes.
+     */
+    private void hashWrittenBytes(FileChannel channel, long position, byte[] data, int length) throws IOException {
+        if (!hashLock.tryLock()) return;
+        try {
+            if (position == hashedBytes) {
+                digest.update(data, 0, length);
+                hashedBytes += length;
+            }
+            hashDownloadedPrefix(channel);
+        } finally {
+            hashLock.unlock();
+        }
+    }
+
+    /**
+     * Reads and hashes everything between the hashed prefix and the first byte that hasn't been downloaded yet.
+     * Must hold the hash lock.
+     */
+    private void hashDownloadedPrefix(FileChannel channel) throws IOException {
+        long prefixEnd = getDownloadedPrefix();
+        if (hashedBytes >= prefixEnd) return;
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        while (hashedBytes < prefixEnd) {
+            buffer.clear().limit((int) Math.min(bufferSize, prefixEnd - hashedBytes));
+            int numBytesRead = channel.read(buffer, hashedBytes);
+            if (numBytesRead < 0) throw new IOException("Partial download is shorter than expected.");
+            digest.update(buffer.array(), 0, numBytesRead);
+            hashedBytes += numBytesRead;
+        }
+    }
+
+    // Segments are in file order, so the prefix ends at the first incomplete segment
+    private synchronized long getDownloadedPrefix() {
+        long prefixEnd = 0;
+        for (DownloadState.Segment segment : state.segments) {
+            prefixEnd = segment.start + segment.downloaded;
+            if (!segment.isComplete()) break;
+        }
+        return prefixEnd;
+    }
+
+    /**
+     * Downloads a single segment, retrying from the last received byte if the connection drops.
+     */
+    private void downloadSegment(DownloadState.Segment segment, FileChannel channel) throws IOException {
+        IOException exception = null;
+        for (int i = 1; i <= MAX_SEGMENT_ATTEMPTS; i++) {
+            try {
+                transferSegment(segment, channel, i);
+                return;
+            } catch (RangeRejectedException e) {
+                throw e;
+            } catch (IOException e) {
+                exception = e;
+                UpdateMetrics.increment(UpdateMetrics.Counter.DOWNLOAD_RETRIES);
+                ZLogger.log("Download segment " + segment.start + "-" + segment.end + " failed, retrying...");
+                try {
+                    Thread.sleep(SEGMENT_RETRY_DELAY_MS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Download interrupted.", ex);
+                }
+            }
+        }
+        throw exception;
+    }
+
+    private void transferSegment(DownloadState.Segment segment, FileChannel channel, int attempt) throws IOException {
+        if (segment.isComplete()) return;
+        long position = segment.start + segment.downloaded;
+        long startPosition = position;
+        int statusCode = -1;
+        UpdateHttpEvent event = new UpdateHttpEvent();
+        event.begin();
+        try {
+            // Segments use HTTP/1.1 so each one gets its own connection, rather than being multiplexed over one
+            HttpRequest.Builder request = HttpUtil.newRequest(url)
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .header("Range", "bytes=" + position + "-" + segment.end);
+            if (state.etag != null) request.header("If-Range", state.etag);
+            else if (state.lastModified != null) request.header("If-Range", state.lastModified);
+            HttpResponse<InputStream> response = HttpUtil.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            statusCode = response.statusCode();
+            if (statusCode != HTTP_PARTIAL) {
+                response.body().close();
+                throw new RangeRejectedException();
+            }
+            try (InputStream inputStream = response.body()) {
+                byte[] data = new byte[bufferSize];
+                int numBytesRead;
+                while (!segment.isComplete()) {
+                    int maxBytes = (int) Math.min(bufferSize, segment.length() - segment.downloaded);
+                    numBytesRead = inputStream.read(data, 0, maxBytes);
+                    if (numBytesRead < 0) throw new IOException("Connection closed before segment was complete.");
+                    ByteBuffer buffer = ByteBuffer.wrap(data, 0, numBytesRead);
+                    long writePosition = position;
+                    while (buffer.hasRemaining()) position += channel.write(buffer, position);
+                    synchronized (this) {
+                        segment.downloaded += numBytesRead;
+                    }
+                    hashWrittenBytes(channel, writePosition, data, numBytesRead);
+                    throttle(numBytesRead);
+                    addProgress(numBytesRead);
+                    if (System.currentTimeMillis() - lastStateSave > STATE_SAVE_INTERVAL_MS) {
+                        channel.force(false);
+                        saveState();
+                    }
+                }
+            }
+        } finally {
+            event.record(url, "GET", statusCode, position - startPosition, attempt);
+        }
+    }
+
+    // Waits outside of the downloader's lock, so other connections can keep reporting progress
+    private void throttle(int numBytes) throws IOException {
+        if (bandwidthLimiter == null) return;
+        long waitMs = bandwidthLimiter.acquire(numBytes);
+        if (waitMs > 0) UpdateMetrics.add(UpdateMetrics.Counter.THROTTLED_MS, waitMs);
+    }
+
+    private synchronized void addProgress(int numBytes) {
+        if (sessionBytes == 0) UpdateMetrics.record(UpdateMetrics.Histogram.TIME_TO_FIRST_BYTE_MS, System.currentTimeMillis() - downloadStart);
+        sessionBytes += numBytes;
+        UpdateMetrics.add(UpdateMetrics.Counter.BYTES_DOWNLOADED, numBytes);
+        bytesDownloaded += numBytes;
+        progressCallback.onProgress(bytesDownloaded, totalBytes);
+    }
+
+    private DownloadState createState(long size, String etag, String lastModified) {
+        DownloadState newState = new DownloadState(url, size, etag, lastModified);
+        int segmentCount = (int) Math.max(1, Math.min(connections, size / MIN_SEGMENT_SIZE));
+        long segmentSize = size / segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            long start = i * segmentSize;
+            long end = i == segmentCount - 1 ? size - 1 : start + segmentSize - 1;
+            newState.segments.add(new DownloadState.Segment(start, end));
+        }
+        return newState;
+    }
+
+    private DownloadState loadState() {
+        if (!Files.exists(stateFile)) return null;
+        try {
+            return gson.fromJson(Files.readString(stateFile, StandardCharsets.UTF_8), DownloadState.class);
+        } catch (IOException | JsonSyntaxException e) {
+            return null;
+        }
+    }
+
+    private synchronized void saveState() {
+        lastStateSave = System.currentTimeMillis();
+        try {
+            Files.writeString(stateFile, gson.toJson(state), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            ZLogger.log("Failed to save download progress: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Thrown when the server responds to a range request with the full file,
+     * which happens when the file has changed or ranges aren't actually supported.
+     */
+    private static class RangeRejectedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        RangeRejectedException() {
+            super("Server did not return the requested range.");
+        }
+
+    }
+
+}
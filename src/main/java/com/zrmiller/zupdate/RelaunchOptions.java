@@ -0,0 +1,140 @@
+package com.zrmiller.zupdate;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Builds the JVM options used when the update process relaunches the program.
+ * <p>
+ * The final launch of the program reuses the Java runtime and JVM arguments of the original program.
+ * Short-lived helper phases (ie patching) use a small heap, serial GC and C1-only compilation,
+ * since they only run for a moment and don't benefit from full JVM ergonomics.
+ * <p>
+ * The program can optionally be launched with a dynamic AppCDS archive, which stores the classes loaded
+ * by a previous run so later launches skip most class loading.
+ * <p>
+ * A Flight Recorder recording started with the original program is carried through every phase,
+ * with each process writing its own file.
+ */
+public class RelaunchOptions {
+
+    public static final String JVM_ARG_PREFIX = "jvmarg:";
+    public static final String HOP_START_PREFIX = "hopstart:";
+    public static final String UPDATE_START_PREFIX = "updatestart:";
+
+    private static final String FLIGHT_RECORDING_ARG = "-XX:StartFlightRecording";
+
+    private static final String[] HELPER_JVM_ARGS = new String[]{
+            "-Xms8m", "-Xmx64m", "-XX:+UseSerialGC", "-XX:TieredStopAtLevel=1", "-Xshare:auto"};
+
+    // Debugging agents would try to bind the same port as the original program
+    private static final String[] EXCLUDED_ARG_PREFIXES = new String[]{"-agentlib:jdwp", "-Xrunjdwp", "-Xdebug"};
+
+    private RelaunchOptions() {
+
+    }
+
+    /**
+     * Finds the java executable running the current program, falling back to 'java' on the path.
+     * Programs started through a native launcher report the launcher as their command,
+     * so the java executable in java.home is preferred in that case.
+     */
+    public static String getJavaCommand() {
+        Optional<String> command = ProcessHandle.current().info().command();
+        if (command.isPresent() && Paths.get(command.get()).getFileName().toString().startsWith("java"))
+            return command.get();
+        String javaHome = System.getProperty("java.home");
+        if (javaHome != null) {
+            Path windowsPath = Paths.get(javaHome, "bin", "java.exe");
+            if (Files.isRegularFile(windowsPath)) return windowsPath.toString();
+            Path path = Paths.get(javaHome, "bin", "java");
+            if (Files.isRegularFile(path)) return path.toString();
+        }
+        return "java";
+    }
+
+    /**
+     * @return The JVM arguments the current program was started with, excluding debugging agents
+     */
+    public static List<String> getCurrentJvmArgs() {
+        ArrayList<String> args = new ArrayList<>();
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!isExcluded(arg)) args.add(arg);
+        }
+        return args;
+    }
+
+    /**
+     * @return JVM arguments for a short-lived helper process
+     */
+    public static List<String> getHelperJvmArgs() {
+        return List.of(HELPER_JVM_ARGS);
+    }
+
+    /**
+     * Uses an AppCDS archive if it exists, or creates it when the launched program exits.
+     * Creating the archive on the first real run means it captures the classes the program actually uses.
+     *
+     * @param archive Archive file, specific to a single version of the JAR
+     */
+    public static List<String> getAppCdsArgs(Path archive) {
+        if (Files.isRegularFile(archive)) return List.of("-XX:SharedArchiveFile=" + archive, "-Xshare:auto");
+        return List.of("-XX:ArchiveClassesAtExit=" + archive);
+    }
+
+    /**
+     * @return True if the JVM arg uses or creates a CDS archive
+     */
+    public static boolean isAppCdsArg(String arg) {
+        return arg.startsWith("-XX:SharedArchiveFile=") || arg.startsWith("-XX:ArchiveClassesAtExit=");
+    }
+
+    /**
+     * Renames the files of Flight Recorder recordings, ie 'update.jfr' becomes 'update-patch.jfr'.
+     *
+     * @param jvmArgs  JVM args of the original program
+     * @param phase    Name added to recording file names
+     * @param keepAll  Return all args, or false to only return Flight Recorder args
+     */
+    public static List<String> getFlightRecorderArgs(List<String> jvmArgs, String phase, boolean keepAll) {
+        ArrayList<String> args = new ArrayList<>();
+        for (String arg : jvmArgs) {
+            if (isFlightRecorderArg(arg)) args.add(renameRecording(arg, phase));
+            else if (keepAll) args.add(arg);
+        }
+        return args;
+    }
+
+    public static boolean isFlightRecorderArg(String arg) {
+        return arg.startsWith(FLIGHT_RECORDING_ARG);
+    }
+
+    // Options follow the arg after '=' or ':', ie -XX:StartFlightRecording=duration=30s,filename=update.jfr
+    private static String renameRecording(String arg, String phase) {
+        if (arg.length() <= FLIGHT_RECORDING_ARG.length()) return arg;
+        String[] options = arg.substring(FLIGHT_RECORDING_ARG.length() + 1).split(",");
+        for (int i = 0; i < options.length; i++) {
+            if (!options[i].startsWith("filename=")) continue;
+            String fileName = options[i].substring("filename=".length());
+            int separator = Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\'));
+            int extension = fileName.lastIndexOf('.');
+            if (extension > separator) fileName = fileName.substring(0, extension) + "-" + phase + fileName.substring(extension);
+            else fileName = fileName + "-" + phase;
+            options[i] = "filename=" + fileName;
+        }
+        return arg.substring(0, FLIGHT_RECORDING_ARG.length() + 1) + String.join(",", options);
+    }
+
+    private static boolean isExcluded(String arg) {
+        for (String prefix : EXCLUDED_ARG_PREFIXES) {
+            if (arg.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.zrmiller.zupdate;
+
+import com.zrmiller.zupdate.data.AppVersion;
+import com.zrmiller.zupdate.data.ReleaseVersion;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * An immutable set of releases ordered by version, for answering version queries without re-fetching.
+ * Lookups are O(log n), and range queries are O(log n) plus the number of releases returned.
+ * Releases with invalid version tags are ignored. If two tags have the same version, the first one is kept.
+ */
+public class ReleaseIndex {
+
+    private final NavigableMap<AppVersion, ReleaseVersion> releases = new TreeMap<>();
+    private final NavigableMap<AppVersion, ReleaseVersion> stableReleases = new TreeMap<>();
+
+    public ReleaseIndex(Iterable<ReleaseVersion> releases) {
+        for (ReleaseVersion release : releases) {
+            if (!release.version.valid || this.releases.containsKey(release.version)) continue;
+            this.releases.put(release.version, release);
+            if (!release.preRelease && !release.version.isPreRelease) stableReleases.put(release.version, release);
+        }
+    }
+
+    /**
+     * @param newReleases Releases to add, replacing indexed releases with the same version
+     * @return A new index containing both sets of releases
+     */
+    public ReleaseIndex withReleases(Collection<ReleaseVersion> newReleases) {
+        ArrayList<ReleaseVersion> combined = new ArrayList<>(newReleases);
+        combined.addAll(releases.values());
+        return new ReleaseIndex(combined);
+    }
+
+    public int size() {
+        return releases.size();
+    }
+
+    /**
+     * @return The release with the given version, or null if it isn't in the index
+     */
+    public ReleaseVersion get(AppVersion version) {
+        return releases.get(version);
+    }
+
+    /**
+     * @return The newest release, or null if there are no eligible releases
+     */
+    public ReleaseVersion getNewest(boolean includePreReleases) {
+        return value(getReleases(includePreReleases).lastEntry());
+    }
+
+    /**
+     * @return The newest release newer than the given version, or null if there isn't one
+     */
+    public ReleaseVersion getNewestAbove(AppVersion version, boolean includePreReleases) {
+        ReleaseVersion newest = getNewest(includePreReleases);
+        if (newest == null || newest.version.compareTo(version) <= 0) return null;
+        return newest;
+    }
+
+    /**
+     * Finds the newest release with the same major and minor version as the given version, ie the newest 1.4.x.
+     *
+     * @return The newest release in the minor line, or null if there isn't one
+     */
+    public ReleaseVersion getNewestInMinorLine(AppVersion version, boolean includePreReleases) {
+        if (!version.valid) return null;
+        // The lowest possible version of the next minor line
+        AppVersion nextLine = new AppVersion("v" + version.getMajor() + "." + (version.getMinor() + 1L) + ".0-pre0");
+        NavigableMap<AppVersion, ReleaseVersion> map = getReleases(includePreReleases);
+        ReleaseVersion release = value(nextLine.valid ? map.lowerEntry(nextLine) : map.lastEntry());
+        if (release == null || release.version.getMajor() != version.getMajor() || release.version.getMinor() != version.getMinor())
+            return null;
+        return release;
+    }
+
+    /**
+     * Lists the releases after one version up to and including another, ie every release a user skips when updating.
+     *
+     * @param from Exclusive lower bound, usually the current version
+     * @param to   Inclusive upper bound, usually the version being updated to
+     * @return Releases ordered oldest to newest
+     */
+    public List<ReleaseVersion> getReleasesBetween(AppVersion from, AppVersion to, boolean includePreReleases) {
+        if (from.compareTo(to) >= 0) return Collections.emptyList();
+        return new ArrayList<>(getReleases(includePreReleases).subMap(from, false, to, true).values());
+    }
+
+    /**
+     * @return All releases, ordered oldest to newest
+     */
+    public List<ReleaseVersion> getReleases() {
+        return new ArrayList<>(releases.values());
+    }
+
+    private NavigableMap<AppVersion, ReleaseVersion> getReleases(boolean includePreReleases) {
+        return includePreReleases ? releases : stableReleases;
+    }
+
+    private static ReleaseVersion value(Map.Entry<AppVersion, ReleaseVersion> entry) {
+        return entry == null ? null : entry.getValue();
+    }
+
+}
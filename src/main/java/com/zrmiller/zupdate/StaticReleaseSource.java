@@ -0,0 +1,91 @@
+package com.zrmiller.zupdate;
+
+import com.google.gson.stream.JsonReader;
+import com.zrmiller.zupdate.data.ReleaseAsset;
+import com.zrmiller.zupdate.data.ReleaseVersion;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+/**
+ * Releases stored in a static layout, which can be served by any file server or shared directory:
+ * <pre>
+ *      releases.json           Every release in the GitHub API format, ie a copy of /repos/{author}/{repo}/releases
+ *      {tag}/{asset name}      Files attached to each release, ie v1.2.0/App.jar
+ * </pre>
+ * Download URLs in releases.json are ignored, assets are always read from the layout.
+ */
+abstract class StaticReleaseSource implements IReleaseSource {
+
+    static final String RELEASES_FILE = "releases.json";
+
+    /**
+     * Opens a file relative to the root of the layout.
+     */
+    abstract InputStream openFile(String path) throws IOException;
+
+    /**
+     * @return A URL that {@link RangedDownloader} can download the asset from
+     */
+    abstract String getAssetURL(String tag, String name);
+
+    @Override
+    public CompletableFuture<ReleaseVersion> fetchLatestReleaseAsync() {
+        return CompletableFuture.supplyAsync(() -> {
+            ReleaseVersion[] latest = new ReleaseVersion[1];
+            boolean success = listReleases(release -> {
+                if (!release.version.valid || release.preRelease) return true;
+                latest[0] = release;
+                return false;
+            });
+            return success ? latest[0] : null;
+        });
+    }
+
+    /**
+     * Reads the entire release list, which is sorted newest first since the file can be in any order.
+     */
+    @Override
+    public boolean listReleases(Predicate<ReleaseVersion> visitor) {
+        ArrayList<ReleaseVersion> releases = new ArrayList<>();
+        UpdateMetrics.increment(UpdateMetrics.Counter.METADATA_REQUESTS);
+        long requestStart = System.currentTimeMillis();
+        try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(openFile(RELEASES_FILE), StandardCharsets.UTF_8)))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                ReleaseVersion release = ReleaseVersion.read(reader);
+                if (release != null) releases.add(relocate(release));
+            }
+            reader.endArray();
+        } catch (IOException | RuntimeException e) {
+            ZLogger.log("Failed to list releases: " + e.getMessage());
+            return false;
+        }
+        UpdateMetrics.record(UpdateMetrics.Histogram.METADATA_FETCH_MS, System.currentTimeMillis() - requestStart);
+        releases.sort(Collections.reverseOrder());
+        for (ReleaseVersion release : releases) {
+            if (!visitor.test(release)) return true;
+        }
+        return true;
+    }
+
+    @Override
+    public InputStream openAsset(ReleaseAsset asset) throws IOException {
+        return UpdateUtil.openURL(asset.url());
+    }
+
+    private ReleaseVersion relocate(ReleaseVersion release) {
+        ArrayList<ReleaseAsset> assets = new ArrayList<>();
+        for (ReleaseAsset asset : release.assets)
+            assets.add(new ReleaseAsset(asset.name(), getAssetURL(release.tag, asset.name()), asset.size()));
+        return new ReleaseVersion(release.tag, assets, release.body, release.preRelease);
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.zrmiller.zupdate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A tiny entry point used to patch on platforms that lock a running JAR file (ie Windows).
+ * Waits for the original program to exit, swaps in the new JAR, then launches it.
+ * Only depends on the JDK, so it starts quickly and never loads Gson or Swing.
+ * <p>
+ * Usage: {@code java -cp <new jar> com.zrmiller.zupdate.UpdateHelper <directory> <pid> <source> <target> <log arg> <command...>}
+ */
+public class UpdateHelper {
+
+    private static final int MAX_ATTEMPTS = 20;
+    private static final int RETRY_DELAY_MS = 100;
+    private static final int EXIT_TIMEOUT_SECONDS = 30;
+
+    public static void main(String[] args) {
+        if (args.length < 6) {
+            System.err.println("Invalid update helper args: " + Arrays.toString(args));
+            System.exit(1);
+        }
+        ZLogger.open(args[0], new String[]{args[4]});
+        long pid = Long.parseLong(args[1]);
+        Path source = Paths.get(args[2]);
+        Path target = Paths.get(args[3]);
+        List<String> command = Arrays.asList(args).subList(5, args.length);
+        waitForExit(pid);
+        // The program is relaunched even if patching failed, so the user always gets it back
+        replace(source, target);
+        ZLogger.log("Running program... " + command);
+        try {
+            new ProcessBuilder(command).inheritIO().start();
+        } catch (IOException e) {
+            ZLogger.log("Failed to launch program!");
+            ZLogger.log(e.getStackTrace());
+        }
+        ZLogger.close();
+        System.exit(0);
+    }
+
+    private static void waitForExit(long pid) {
+        Optional<ProcessHandle> handle = ProcessHandle.of(pid);
+        if (handle.isEmpty()) return;
+        ZLogger.log("Waiting for process " + pid + " to exit...");
+        try {
+            handle.get().onExit().get(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            ZLogger.log("Process " + pid + " did not exit, patching anyway.");
+        }
+    }
+
+    // The original JAR can stay locked briefly after its process exits, so retry for a while
+    private static void replace(Path source, Path target) {
+        ZLogger.log("Copying file...");
+        ZLogger.log("Target: " + source);
+        ZLogger.log("Destination: " + target);
+        IOException exception = null;
+        for (int i = 1; i <= MAX_ATTEMPTS; i++) {
+            try {
+                UpdateUtil.replaceFileAtomically(source, target);
+                if (i > 1) ZLogger.log("File copied successfully after " + i + " attempts.");
+                else ZLogger.log("File copied successfully.");
+                return;
+            } catch (IOException e) {
+                exception = e;
+                try {
+                    Thread.sleep(RETRY_DELAY_MS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        ZLogger.log("Failed to copy file!");
+        if (exception != null) ZLogger.log(exception.getStackTrace());
+    }
+
+}
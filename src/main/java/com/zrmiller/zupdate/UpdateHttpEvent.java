@@ -0,0 +1,55 @@
+package com.zrmiller.zupdate;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event covering one HTTP request made by the update process.
+ * Only recorded while a Flight Recorder recording is running.
+ */
+@Name("com.zrmiller.zupdate.UpdateHttp")
+@Label("Update HTTP Request")
+@Category("ZUpdate")
+@Description("A release metadata request, or a download request for a file or part of a file")
+@StackTrace(false)
+class UpdateHttpEvent extends Event {
+
+    @Label("URL")
+    String url;
+
+    @Label("Method")
+    String method;
+
+    @Label("Status Code")
+    @Description("HTTP response code, or -1 if no response was received")
+    int statusCode = -1;
+
+    @Label("Bytes")
+    @Description("Bytes received in the response body")
+    @DataAmount
+    long bytes;
+
+    @Label("Attempt")
+    @Description("Starts at 1, higher if the request is a retry")
+    int attempt = 1;
+
+    /**
+     * Ends the event, filling in fields and committing only if a recording wants it.
+     */
+    void record(String url, String method, int statusCode, long bytes, int attempt) {
+        end();
+        if (!shouldCommit()) return;
+        this.url = url;
+        this.method = method;
+        this.statusCode = statusCode;
+        this.bytes = bytes;
+        this.attempt = attempt;
+        commit();
+    }
+
+}
@@ -1,27 +1,39 @@
 package com.zrmiller.zupdate;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
 import com.zrmiller.zupdate.data.AppVersion;
+import com.zrmiller.zupdate.data.ReleaseAsset;
 import com.zrmiller.zupdate.data.ReleaseVersion;
+import com.zrmiller.zupdate.data.TransferProgress;
 
 import javax.swing.*;
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
 import java.net.URISyntaxException;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * An update system for a single JAR program using the GitHub API.
+ * Releases can also be served from a mirror or a directory, see {@link IReleaseSource}.
  * <p>
  * Example Usage:
  * <pre>
@@ -32,28 +44,79 @@ import java.util.Collections;
  *          updateManager.runUpdateProcess();
  *      }
  * </pre>
+ * Checks can also be made without blocking, ie during startup:
+ * <pre>
+ *      updateManager.isUpdateAvailableAsync().thenAccept(available -> {...});
+ * </pre>
  */
 public class UpdateManager {
 
     // TODO : Add a function to fetch patch notes, and possibly save them to disk.
 
-    private static final int BYTE_BUFFER_SIZE = 1024 * 4;
     private static final String LAUNCH_PATH_PREFIX = "launcher:";
     private static final String TEMP_FILE_NAME = "SlimTrade-Updater.jar";
+    private static final String PATCH_FILE_SUFFIX = ".patch";
+    private static final String SAVE_FILE_NAME = "update.json";
+    private static final String CDS_FOLDER = "cds";
+    private static final String CDS_ARCHIVE_SUFFIX = ".jsa";
+    private static final String METRICS_FILE_PREFIX = "metrics_";
+    private static final String CHECKSUM_SUFFIX = ".sha256";
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
 
     private final AppVersion CURRENT_VERSION;
     private final String DIRECTORY;
-    private final String LATEST_VERSION_URL;
-    private final String ALL_RELEASES_URL;
+    private final IReleaseSource RELEASE_SOURCE;
     private final boolean VALID_DIRECTORY;
 
-    private ReleaseVersion latestRelease;
+    private volatile ReleaseVersion latestRelease;
+    private volatile ReleaseIndex releaseIndex;
+    private CompletableFuture<Boolean> downloadFuture;
     private String launchPath;
     private UpdateAction currentAction = UpdateAction.NONE;
     private final ArrayList<IUpdateProgressListener> progressListeners = new ArrayList<>();
+    private final ArrayList<IDownloadProgressListener> downloadProgressListeners = new ArrayList<>();
+    private final BandwidthLimiter bandwidthLimiter = new BandwidthLimiter(0, DEFAULT_BURST_BYTES);
+    private final ProgressReporter progressReporter = new ProgressReporter(this::dispatchProgress, DEFAULT_MAX_PROGRESS_RATE, bandwidthLimiter::getRate);
+    private int downloadConnections = DEFAULT_DOWNLOAD_CONNECTIONS;
+    private int currentProgressPercent = -1;
+    private boolean deltaUpdates = true;
+    private boolean entryUpdates = true;
+    private final UpdateSaveFile saveFile;
+    private boolean singleRelaunch = false;
+    private final ArrayList<String> originalJvmArgs = new ArrayList<>();
+    private boolean appCds = false;
+    private boolean metricsExport = false;
+    private boolean includePreReleases = false;
+    private boolean validateDownloads = true;
+    private DownloadCache downloadCache;
+    private ScheduledFuture<?> prefetchTask;
+    private long prefetchInterval;
+    private volatile boolean prefetching;
+    private long downloadRateLimit = 0;
+    private long backgroundRateLimit = 0;
+    private long updateStart = -1;
 
     private static final int MAX_ACTION_ATTEMPTS = 5;
     private static final int ACTION_RETRY_DELAY_MS = 50;
+    private static final int DEFAULT_DOWNLOAD_CONNECTIONS = 4;
+    private static final int DEFAULT_MAX_PROGRESS_RATE = 20;
+    private static final long DEFAULT_BURST_BYTES = 1024 * 256;
+    private static final int RELEASES_PER_PAGE = 100;
+    private static final double PREFETCH_JITTER = 0.25;
+
+    private static final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ZUpdate Background");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Only schedules checks, downloads still run on the background executor
+    private static final ScheduledExecutorService prefetchScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ZUpdate Prefetch");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
 
     /**
      * Handles updating a single JAR file program using the GitHub API.
@@ -64,18 +127,32 @@ public class UpdateManager {
      * @param version   Version information about the currently running program
      */
     public UpdateManager(String author, String repo, String directory, AppVersion version) {
+        this(new GitHubReleaseSource(author, repo), directory, version);
+    }
+
+    /**
+     * Handles updating a single JAR file program using releases from any source, ie a mirror on the local network.
+     *
+     * @param releaseSource Where releases are listed and downloaded from
+     * @param directory     Directory where downloaded file will be stored temporarily
+     * @param version       Version information about the currently running program
+     */
+    public UpdateManager(IReleaseSource releaseSource, String directory, AppVersion version) {
         this.DIRECTORY = UpdateUtil.cleanFileSeparators(directory);
         this.CURRENT_VERSION = version;
-        LATEST_VERSION_URL = "https://api.github.com/repos/" + author + "/" + repo + "/releases/latest";
-        ALL_RELEASES_URL = "https://api.github.com/repos/" + author + "/" + repo + "/releases";
+        this.RELEASE_SOURCE = releaseSource;
         VALID_DIRECTORY = UpdateUtil.validateDirectory(DIRECTORY);
         if (!VALID_DIRECTORY) ZLogger.log("Failed to validate directory: " + DIRECTORY);
+        saveFile = loadSaveFile();
+        if (VALID_DIRECTORY) downloadCache = DownloadCache.open(DownloadCache.getDefaultDirectory(DIRECTORY));
+        if (releaseSource instanceof GitHubReleaseSource gitHubSource) gitHubSource.setSaveFile(saveFile, this::saveSaveFile);
     }
 
     /**
      * Begins the entire update process.
      */
     public void runUpdateProcess() {
+        if (updateStart == -1) updateStart = System.currentTimeMillis();
         String[] args = new String[]{UpdateAction.DOWNLOAD.toString(), LAUNCH_PATH_PREFIX + getLaunchPath()};
         continueUpdateProcess(args);
     }
@@ -89,12 +166,28 @@ public class UpdateManager {
     public void continueUpdateProcess(String[] args) {
         // Parse program args
         ArrayList<String> launchArgs = new ArrayList<>();
+        long hopStart = -1;
+        originalJvmArgs.clear();
         for (String arg : args) {
             if (arg.startsWith(LAUNCH_PATH_PREFIX)) {
                 launchArgs.add(arg);
                 launchPath = arg.replaceFirst(LAUNCH_PATH_PREFIX, "");
                 continue;
             }
+            if (arg.startsWith(RelaunchOptions.JVM_ARG_PREFIX)) {
+                launchArgs.add(arg);
+                originalJvmArgs.add(arg.replaceFirst(RelaunchOptions.JVM_ARG_PREFIX, ""));
+                continue;
+            }
+            if (arg.startsWith(RelaunchOptions.HOP_START_PREFIX)) {
+                hopStart = Long.parseLong(arg.replaceFirst(RelaunchOptions.HOP_START_PREFIX, ""));
+                continue;
+            }
+            if (arg.startsWith(RelaunchOptions.UPDATE_START_PREFIX)) {
+                launchArgs.add(arg);
+                updateStart = Long.parseLong(arg.replaceFirst(RelaunchOptions.UPDATE_START_PREFIX, ""));
+                continue;
+            }
             if (arg.equals(UpdateAction.DOWNLOAD.toString())) currentAction = UpdateAction.DOWNLOAD;
             if (arg.equals(UpdateAction.PATCH.toString())) currentAction = UpdateAction.PATCH;
             if (arg.equals(UpdateAction.CLEAN.toString())) currentAction = UpdateAction.CLEAN;
@@ -103,17 +196,58 @@ public class UpdateManager {
             launchPath = getLaunchPath();
             launchArgs.add(LAUNCH_PATH_PREFIX + launchPath);
         }
+        if (hopStart != -1) ZLogger.log("Started '" + currentAction + "' process in " + (System.currentTimeMillis() - hopStart) + "ms.");
+        // The download runs in the original program, so its JVM args are the ones to keep for the final launch
+        if (currentAction == UpdateAction.DOWNLOAD) {
+            originalJvmArgs.clear();
+            launchArgs.removeIf(arg -> arg.startsWith(RelaunchOptions.JVM_ARG_PREFIX));
+            originalJvmArgs.addAll(RelaunchOptions.getCurrentJvmArgs());
+            for (String jvmArg : originalJvmArgs) launchArgs.add(RelaunchOptions.JVM_ARG_PREFIX + jvmArg);
+            if (updateStart != -1 && launchArgs.stream().noneMatch(arg -> arg.startsWith(RelaunchOptions.UPDATE_START_PREFIX)))
+                launchArgs.add(RelaunchOptions.UPDATE_START_PREFIX + updateStart);
+        }
         // Run the target action based on args
+        long actionStart = System.currentTimeMillis();
+        UpdatePhaseEvent phaseEvent = new UpdatePhaseEvent();
+        phaseEvent.begin();
         switch (currentAction) {
             case DOWNLOAD -> {
-                boolean success = downloadFile();
-                if (success) runProcess(DIRECTORY + TEMP_FILE_NAME, UpdateAction.PATCH, launchArgs);
+                boolean success = awaitDownload();
+                phaseEvent.record(currentAction, latestRelease == null ? null : latestRelease.tag, success);
+                if (!success) return;
+                ZLogger.log("Download finished in " + (System.currentTimeMillis() - actionStart) + "ms.");
+                if (singleRelaunch) relaunchPatched(launchArgs);
+                else runProcess(DIRECTORY + TEMP_FILE_NAME, UpdateAction.PATCH, launchArgs);
             }
             case PATCH -> {
-                patch();
+                boolean success = patch();
+                phaseEvent.record(currentAction, null, success);
+                UpdateMetrics.record(UpdateMetrics.Histogram.PATCH_MS, System.currentTimeMillis() - actionStart);
+                ZLogger.log("Patch finished in " + (System.currentTimeMillis() - actionStart) + "ms.");
                 runProcess(launchPath, UpdateAction.CLEAN, launchArgs);
             }
-            case CLEAN -> clean();
+            case CLEAN -> {
+                clean();
+                clearStagedUpdate();
+                if (appCds) cleanAppCdsArchives();
+                phaseEvent.record(currentAction, CURRENT_VERSION.toString(), true);
+                UpdateMetrics.record(UpdateMetrics.Histogram.CLEAN_MS, System.currentTimeMillis() - actionStart);
+                ZLogger.log("Clean finished in " + (System.currentTimeMillis() - actionStart) + "ms.");
+                if (updateStart != -1) {
+                    UpdateMetrics.record(UpdateMetrics.Histogram.TOTAL_UPDATE_MS, System.currentTimeMillis() - updateStart);
+                    ZLogger.log("Update finished in " + (System.currentTimeMillis() - updateStart) + "ms.");
+                }
+                exportMetrics();
+            }
+            case NONE -> {
+                boolean staged = hasStagedUpdate();
+                if (saveFile.autoUpdate && staged) {
+                    ZLogger.log("Installing staged update: " + saveFile.stagedTag);
+                    runUpdateProcess();
+                } else if (!staged) {
+                    cleanLeftovers();
+                }
+            }
         }
     }
 
@@ -133,22 +267,258 @@ public class UpdateManager {
      * @return Update available
      */
     public boolean isUpdateAvailable(boolean forceCheck) {
-        if (!VALID_DIRECTORY) return false;
+        return isUpdateAvailableAsync(forceCheck).join();
+    }
+
+    /**
+     * Checks if a new version is available on GitHub without blocking the calling thread. Won't ping multiple times.
+     *
+     * @return A future that completes with true if an update is available
+     */
+    public CompletableFuture<Boolean> isUpdateAvailableAsync() {
+        return isUpdateAvailableAsync(false);
+    }
+
+    /**
+     * Checks if a new version is available on GitHub without blocking the calling thread.
+     *
+     * @param forceCheck Ping GitHub even if it has already been pinged before
+     * @return A future that completes with true if an update is available
+     */
+    public CompletableFuture<Boolean> isUpdateAvailableAsync(boolean forceCheck) {
+        if (!VALID_DIRECTORY) return CompletableFuture.completedFuture(false);
         String currentVersionString = CURRENT_VERSION.toString();
-        if (currentVersionString == null) return false;
-        if (latestRelease == null || forceCheck) {
-            ZLogger.log("Checking for update...");
-            ZLogger.log("Current version: " + currentVersionString);
-            latestRelease = fetchLatestRelease();
-            if (latestRelease == null) return false;
+        if (currentVersionString == null) return CompletableFuture.completedFuture(false);
+        if (latestRelease != null && !forceCheck) return CompletableFuture.completedFuture(checkLatestRelease());
+        if (updateStart == -1) updateStart = System.currentTimeMillis();
+        ZLogger.log("Checking for update...");
+        ZLogger.log("Current version: " + currentVersionString);
+        // The latest release endpoint never returns pre-releases, so they are found through the full release list
+        CompletableFuture<ReleaseVersion> fetch = includePreReleases
+                ? CompletableFuture.supplyAsync(this::fetchNewestIndexedRelease, backgroundExecutor)
+                : fetchLatestReleaseAsync();
+        return fetch.thenApply(release -> {
+            if (release == null) return false;
+            latestRelease = release;
             ZLogger.log("Latest version: " + latestRelease.tag);
-        }
-        boolean updateAvailable = !currentVersionString.equals(latestRelease.tag);
+            return checkLatestRelease();
+        });
+    }
+
+    /**
+     * Only newer versions count as updates, so a rolled back release or an older pre-release is never installed.
+     */
+    private boolean checkLatestRelease() {
+        boolean updateAvailable = latestRelease.version.compareTo(CURRENT_VERSION) > 0;
         if (updateAvailable) ZLogger.log("Update available!");
+        else if (latestRelease.version.compareTo(CURRENT_VERSION) < 0) ZLogger.log("Program is newer than the latest release.");
         else ZLogger.log("Program is up to date.");
         return updateAvailable;
     }
 
+    /**
+     * Downloads the latest version in the background, without starting the rest of the update process.
+     * Once complete, {@link #runUpdateProcess()} uses the downloaded file instead of downloading again.
+     * Calling this multiple times returns the same download.
+     *
+     * @return A future that completes with true if the download succeeded
+     */
+    public synchronized CompletableFuture<Boolean> downloadAsync() {
+        if (downloadFuture == null || (downloadFuture.isDone() && !downloadFuture.join())) {
+            if (launchPath == null) launchPath = getLaunchPath();
+            downloadFuture = CompletableFuture.supplyAsync(this::downloadFile, backgroundExecutor);
+        }
+        return downloadFuture;
+    }
+
+    /**
+     * Finishes the download the user is waiting on. A download already started by {@link #downloadAsync()}
+     * is joined and continues at full speed. If it failed, the staged update or a new download is used instead.
+     *
+     * @return True if the download succeeded
+     */
+    boolean awaitDownload() {
+        CompletableFuture<Boolean> download;
+        synchronized (this) {
+            prefetching = false;
+            bandwidthLimiter.setRate(downloadRateLimit);
+            download = downloadFuture;
+            // Cleared so a failed download isn't reused by a later call to downloadAsync()
+            downloadFuture = null;
+        }
+        if (download != null && download.exceptionally(throwable -> false).join()) return true;
+        return useStagedUpdate() || downloadFile();
+    }
+
+    /**
+     * Periodically checks for updates in the background, downloading and verifying new releases without any prompts.
+     * A staged release makes {@link #runUpdateProcess()} skip straight to patching,
+     * and is installed on the next launch if auto update is enabled, see {@link #setAutoUpdate(boolean)}.
+     * Checks are spread out with random jitter, so many clients don't check at the same moment.
+     *
+     * @param intervalMillis Average time between checks
+     */
+    public synchronized void startBackgroundUpdates(long intervalMillis) {
+        stopBackgroundUpdates();
+        prefetchInterval = Math.max(1, intervalMillis);
+        schedulePrefetch();
+    }
+
+    public synchronized void stopBackgroundUpdates() {
+        if (prefetchTask != null) prefetchTask.cancel(false);
+        prefetchTask = null;
+    }
+
+    private synchronized void schedulePrefetch() {
+        long jitter = (long) (prefetchInterval * PREFETCH_JITTER);
+        long delay = prefetchInterval - jitter + ThreadLocalRandom.current().nextLong(jitter * 2 + 1);
+        prefetchTask = prefetchScheduler.schedule(this::prefetch, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void prefetch() {
+        try {
+            synchronized (this) {
+                if (prefetchTask == null) return;
+                // Checking replaces the latest release, which an ongoing download is still using
+                if (downloadFuture != null && !downloadFuture.isDone()) return;
+            }
+            if (!isUpdateAvailable(true) || hasStagedUpdate()) return;
+            ZLogger.log("Downloading update in the background: " + latestRelease.tag);
+            CompletableFuture<Boolean> download;
+            synchronized (this) {
+                // A finished download belongs to an older release
+                if (downloadFuture != null && downloadFuture.isDone()) downloadFuture = null;
+                prefetching = true;
+                bandwidthLimiter.setRate(backgroundRateLimit);
+                download = downloadAsync();
+            }
+            download.join();
+        } catch (RuntimeException e) {
+            ZLogger.log("Background update check failed: " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                if (prefetching) bandwidthLimiter.setRate(downloadRateLimit);
+                prefetching = false;
+                if (prefetchTask != null) schedulePrefetch();
+            }
+        }
+    }
+
+    /**
+     * Limits the download speed while the user is waiting on an update. Takes effect immediately,
+     * including for a download in progress. Defaults to 0, unlimited.
+     *
+     * @param bytesPerSecond Average speed limit, 0 for unlimited
+     */
+    public synchronized void setDownloadRateLimit(long bytesPerSecond) {
+        downloadRateLimit = Math.max(0, bytesPerSecond);
+        if (!prefetching) bandwidthLimiter.setRate(downloadRateLimit);
+    }
+
+    /**
+     * Limits the download speed of background updates, so they don't compete with the program for bandwidth.
+     * Lifted to the regular limit once the user starts the update. Defaults to 0, unlimited.
+     *
+     * @param bytesPerSecond Average speed limit, 0 for unlimited
+     */
+    public synchronized void setBackgroundRateLimit(long bytesPerSecond) {
+        backgroundRateLimit = Math.max(0, bytesPerSecond);
+        if (prefetching) bandwidthLimiter.setRate(backgroundRateLimit);
+    }
+
+    /**
+     * Sets how many bytes can be downloaded at full speed before a rate limit applies. Defaults to 256 KB.
+     */
+    public void setDownloadBurst(long bytes) {
+        bandwidthLimiter.setBurst(bytes);
+    }
+
+    /**
+     * When enabled, a release staged by background updates is installed the next time the program launches.
+     * Saved between runs.
+     */
+    public void setAutoUpdate(boolean autoUpdate) {
+        saveFile.autoUpdate = autoUpdate;
+        saveSaveFile();
+    }
+
+    public boolean isAutoUpdate() {
+        return saveFile.autoUpdate;
+    }
+
+    /**
+     * Checks if a verified download of a newer version is waiting in the working directory.
+     * The file is only hashed again if its size or modified time changed since it was verified.
+     */
+    public boolean hasStagedUpdate() {
+        String stagedTag;
+        String stagedSha256;
+        long stagedSize;
+        long stagedModified;
+        synchronized (this) {
+            stagedTag = saveFile.stagedTag;
+            stagedSha256 = saveFile.stagedSha256;
+            stagedSize = saveFile.stagedSize;
+            stagedModified = saveFile.stagedModified;
+        }
+        if (stagedTag == null || stagedSha256 == null) return false;
+        if (AppVersion.of(stagedTag).compareTo(CURRENT_VERSION) <= 0) return false;
+        if (latestRelease != null && !latestRelease.tag.equals(stagedTag)) return false;
+        Path tempFilePath = Paths.get(DIRECTORY + TEMP_FILE_NAME);
+        try {
+            if (!Files.isRegularFile(tempFilePath)) return false;
+            long size = Files.size(tempFilePath);
+            long modified = Files.getLastModifiedTime(tempFilePath).toMillis();
+            if (size == stagedSize && modified == stagedModified) return true;
+            if (!HexFormat.of().formatHex(UpdateUtil.hash(tempFilePath)).equals(stagedSha256)) return false;
+            synchronized (this) {
+                if (!stagedTag.equals(saveFile.stagedTag)) return false;
+                saveFile.stagedSize = size;
+                saveFile.stagedModified = modified;
+            }
+            saveSaveFile();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private boolean useStagedUpdate() {
+        if (!hasStagedUpdate()) return false;
+        ZLogger.log("Using staged update: " + saveFile.stagedTag);
+        return notifyDownloadComplete();
+    }
+
+    /**
+     * @param sha256 Hash computed while downloading, or null if the file was built locally and needs hashing
+     */
+    private void stageDownload(byte[] sha256) {
+        Path tempFilePath = Paths.get(DIRECTORY + TEMP_FILE_NAME);
+        try {
+            if (sha256 == null) sha256 = UpdateUtil.hash(tempFilePath);
+            long size = Files.size(tempFilePath);
+            long modified = Files.getLastModifiedTime(tempFilePath).toMillis();
+            synchronized (this) {
+                saveFile.stagedTag = latestRelease.tag;
+                saveFile.stagedSha256 = HexFormat.of().formatHex(sha256);
+                saveFile.stagedSize = size;
+                saveFile.stagedModified = modified;
+            }
+            saveSaveFile();
+        } catch (IOException e) {
+            ZLogger.log("Failed to stage download: " + e.getMessage());
+        }
+    }
+
+    private void clearStagedUpdate() {
+        if (saveFile.stagedTag == null) return;
+        saveFile.stagedTag = null;
+        saveFile.stagedSha256 = null;
+        saveFile.stagedSize = 0;
+        saveFile.stagedModified = 0;
+        saveSaveFile();
+    }
+
     /**
      * Reruns the program at the specified path, running the specified UpdateAction on launch.
      *
@@ -157,18 +527,46 @@ public class UpdateManager {
      * @param additionalArgs A list of command line arguments that should be passed to the next program run
      */
     private void runProcess(String path, UpdateAction updateAction, ArrayList<String> additionalArgs) {
+        startProcessAndExit(getJarCommand(path, updateAction, additionalArgs), updateAction.toString());
+    }
+
+    /**
+     * Builds the command to run a JAR file. Patching runs as a lightweight helper,
+     * everything else is a launch of the program itself using its original Java runtime and JVM args.
+     */
+    private ArrayList<String> getJarCommand(String path, UpdateAction updateAction, ArrayList<String> additionalArgs) {
         ArrayList<String> args = new ArrayList<>();
-        args.add("java");
+        args.add(RelaunchOptions.getJavaCommand());
+        // Each process writes its own Flight Recorder file, rather than replacing the previous one
+        List<String> jvmArgs = RelaunchOptions.getFlightRecorderArgs(originalJvmArgs, updateAction.toString().toLowerCase(), true);
+        if (updateAction == UpdateAction.PATCH) {
+            args.addAll(RelaunchOptions.getHelperJvmArgs());
+            args.addAll(RelaunchOptions.getFlightRecorderArgs(originalJvmArgs, updateAction.toString().toLowerCase(), false));
+        } else if (appCds) {
+            // Archives from the original args belong to the old version
+            for (String jvmArg : jvmArgs) if (!RelaunchOptions.isAppCdsArg(jvmArg)) args.add(jvmArg);
+            AppVersion launchVersion = currentAction == UpdateAction.DOWNLOAD && latestRelease != null ? latestRelease.version : CURRENT_VERSION;
+            if (UpdateUtil.validateDirectory(DIRECTORY + CDS_FOLDER))
+                args.addAll(RelaunchOptions.getAppCdsArgs(getAppCdsArchive(launchVersion)));
+        } else {
+            args.addAll(jvmArgs);
+        }
         args.add("-jar");
         args.add(path);
         args.add(updateAction.toString());
         args.add(ZLogger.getLaunchArg());
+        args.add(RelaunchOptions.HOP_START_PREFIX + System.currentTimeMillis());
         args.addAll(additionalArgs);
+        return args;
+    }
+
+    private void startProcessAndExit(ArrayList<String> args, String processName) {
         ProcessBuilder builder = new ProcessBuilder(args);
         builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
         builder.redirectError(ProcessBuilder.Redirect.INHERIT);
         try {
-            ZLogger.log("Running '" + updateAction + "' process... " + Arrays.toString(args.toArray()));
+            ZLogger.log("Running '" + processName + "' process... " + Arrays.toString(args.toArray()));
+            exportMetrics();
             ZLogger.close();
             builder.start();
             System.exit(0);
@@ -177,61 +575,184 @@ public class UpdateManager {
         }
     }
 
+    /**
+     * Finishes an update with a single relaunch of the program.
+     * If the platform allows replacing a running JAR, the patch is applied from this process.
+     * Otherwise the dependency-free {@link UpdateHelper} swaps the file once this process exits.
+     * Either way the next launch is the updated program, which deletes the temporary file on startup.
+     */
+    private void relaunchPatched(ArrayList<String> launchArgs) {
+        ArrayList<String> appCommand = getJarCommand(launchPath, UpdateAction.CLEAN, launchArgs);
+        if (canReplaceRunningJar()) {
+            long patchStart = System.currentTimeMillis();
+            if (patch()) {
+                UpdateMetrics.record(UpdateMetrics.Histogram.PATCH_MS, System.currentTimeMillis() - patchStart);
+                startProcessAndExit(appCommand, UpdateAction.CLEAN.toString());
+                return;
+            }
+            ZLogger.log("Failed to patch from running program, falling back to update process.");
+            runProcess(DIRECTORY + TEMP_FILE_NAME, UpdateAction.PATCH, launchArgs);
+            return;
+        }
+        ArrayList<String> args = new ArrayList<>();
+        args.add(RelaunchOptions.getJavaCommand());
+        args.addAll(RelaunchOptions.getHelperJvmArgs());
+        args.add("-cp");
+        args.add(DIRECTORY + TEMP_FILE_NAME);
+        args.add(UpdateHelper.class.getName());
+        args.add(DIRECTORY);
+        args.add(Long.toString(ProcessHandle.current().pid()));
+        args.add(DIRECTORY + TEMP_FILE_NAME);
+        args.add(launchPath);
+        args.add(ZLogger.getLaunchArg());
+        args.addAll(appCommand);
+        startProcessAndExit(args, "helper");
+    }
+
+    /**
+     * Windows locks the JAR file of a running program, other platforms allow it to be replaced.
+     * Replacing is safe since the running program keeps reading the original file.
+     */
+    private static boolean canReplaceRunningJar() {
+        return !System.getProperty("os.name").toLowerCase().contains("win");
+    }
+
+    /**
+     * Fetches the latest release from the release source. GitHub releases use the metadata cache when possible.
+     */
     private ReleaseVersion fetchLatestRelease() {
-        JsonElement json = fetchDataFromGitHub(LATEST_VERSION_URL);
-        if (json == null) return null;
-        return new ReleaseVersion(json);
+        return fetchLatestReleaseAsync().join();
+    }
+
+    private CompletableFuture<ReleaseVersion> fetchLatestReleaseAsync() {
+        return RELEASE_SOURCE.fetchLatestReleaseAsync();
+    }
+
+    private ReleaseVersion fetchNewestIndexedRelease() {
+        ReleaseIndex index = releaseIndex;
+        index = index == null ? fetchReleaseIndex() : refreshReleaseIndex(index);
+        return index == null ? null : index.getNewest(true);
+    }
+
+    /**
+     * Adds releases published since the index was fetched. Releases are listed newest first, so listing stops
+     * at the first release that's already indexed, which usually means only the first page is read.
+     * Deleted releases stay in the index until it's fetched again with {@link #fetchReleaseIndex()}.
+     *
+     * @return The refreshed index, or null if listing releases failed
+     */
+    private ReleaseIndex refreshReleaseIndex(ReleaseIndex index) {
+        ArrayList<ReleaseVersion> newReleases = new ArrayList<>();
+        boolean success = listReleases(release -> {
+            if (!release.version.valid) return true;
+            ReleaseVersion indexed = index.get(release.version);
+            if (indexed != null && indexed.tag.equals(release.tag)) return false;
+            newReleases.add(release);
+            return true;
+        });
+        if (!success) return null;
+        if (newReleases.isEmpty()) return index;
+        ReleaseIndex refreshed = index.withReleases(newReleases);
+        releaseIndex = refreshed;
+        ZLogger.log("Indexed " + newReleases.size() + " new releases.");
+        return refreshed;
     }
 
+    /**
+     * Fetches the newest release, including pre-releases.
+     *
+     * @return The newest release, or null if none was found or the request failed
+     */
     public ReleaseVersion fetchLatestReleaseFromAll() {
-        JsonElement json = fetchDataFromGitHub(ALL_RELEASES_URL);
-        if (json == null) return null;
-        JsonArray array = json.getAsJsonArray();
-        ArrayList<ReleaseVersion> versions = new ArrayList<>();
-        for (JsonElement entry : array) {
-            System.out.println(entry);
-            ReleaseVersion version = new ReleaseVersion(entry);
-            versions.add(version);
-        }
-        Collections.sort(versions);
-        for (ReleaseVersion version : versions) {
-            System.out.println(version);
-        }
-        return null;
+        return fetchLatestReleaseFromAll(true);
     }
 
     /**
-     * Fetches data from a GitHub API endpoint.
+     * Fetches the newest release by searching the list of all releases.
+     * GitHub lists releases newest first, so the search stops one page after the first eligible release,
+     * which still catches an older version line being released after a newer one.
      *
-     * @param url GitHub API endpoint
-     * @return A JSON response, or null if request failed.
+     * @param includePreReleases If pre-releases should be considered
+     * @return The newest release, or null if none was found or the request failed
      */
-    private JsonElement fetchDataFromGitHub(String url) {
-        try {
-            HttpURLConnection httpConnection = (HttpURLConnection) (new URL(url).openConnection());
-            BufferedReader inputStream;
+    public ReleaseVersion fetchLatestReleaseFromAll(boolean includePreReleases) {
+        ReleaseVersion[] newest = new ReleaseVersion[1];
+        int[] remaining = new int[]{RELEASES_PER_PAGE};
+        listReleases(release -> {
+            if (newest[0] != null) remaining[0]--;
+            if (release.version.valid && (includePreReleases || !release.preRelease)) {
+                if (newest[0] == null || release.compareTo(newest[0]) > 0) newest[0] = release;
+            }
+            return remaining[0] > 0;
+        });
+        return newest[0];
+    }
+
+    /**
+     * Returns the index of all releases, fetching it if it hasn't been fetched yet.
+     *
+     * @return The index, or null if it couldn't be fetched
+     */
+    public ReleaseIndex getReleaseIndex() {
+        ReleaseIndex index = releaseIndex;
+        if (index != null) return index;
+        return fetchReleaseIndex();
+    }
+
+    /**
+     * Fetches every release and indexes them by version. The index is kept for later calls to {@link #getReleaseIndex()}.
+     *
+     * @return The index, or null if listing releases failed
+     */
+    public ReleaseIndex fetchReleaseIndex() {
+        ArrayList<ReleaseVersion> releases = new ArrayList<>();
+        if (!listReleases(releases::add)) return null;
+        ReleaseIndex index = new ReleaseIndex(releases);
+        releaseIndex = index;
+        ZLogger.log("Indexed " + index.size() + " releases.");
+        return index;
+    }
+
+    /**
+     * Lists every published release, newest first.
+     * Drafts and releases without any files are skipped.
+     *
+     * @param visitor Called for each release, return false to stop listing
+     * @return False if a request failed before listing finished
+     */
+    public boolean listReleases(Predicate<ReleaseVersion> visitor) {
+        return RELEASE_SOURCE.listReleases(visitor);
+    }
+
+    ///////////////
+    // Save File //
+    ///////////////
+
+    private UpdateSaveFile loadSaveFile() {
+        Path path = Paths.get(DIRECTORY + SAVE_FILE_NAME);
+        if (VALID_DIRECTORY && Files.exists(path)) {
             try {
-                inputStream = new BufferedReader(new InputStreamReader(httpConnection.getInputStream()));
-            } catch (IOException e) {
-                ZLogger.log("Failed to connect to GitHub. This is either a connection issue or the API rate has been exceeded.");
-                return null;
+                UpdateSaveFile data = gson.fromJson(Files.readString(path, StandardCharsets.UTF_8), UpdateSaveFile.class);
+                if (data != null) return data;
+            } catch (IOException | JsonSyntaxException e) {
+                ZLogger.log("Failed to read update save file, resetting it.");
             }
-            StringBuilder builder = new StringBuilder();
-            while (inputStream.ready()) builder.append(inputStream.readLine());
-            inputStream.close();
-            return JsonParser.parseString(builder.toString());
-        } catch (MalformedURLException e) {
-            ZLogger.log("Failed to fetch data from GitHub, bad URL: " + url);
+        }
+        return new UpdateSaveFile();
+    }
+
+    private synchronized void saveSaveFile() {
+        if (!VALID_DIRECTORY) return;
+        try {
+            Files.writeString(Paths.get(DIRECTORY + SAVE_FILE_NAME), gson.toJson(saveFile), StandardCharsets.UTF_8);
         } catch (IOException e) {
-            ZLogger.log("Failed to fetch data from GitHub.");
+            ZLogger.log("Failed to write update save file: " + e.getMessage());
         }
-        return null;
     }
 
     private String getLaunchPath() {
         try {
-            String path = UpdateManager.class.getProtectionDomain().getCodeSource().getLocation().toURI().getPath();
-            if (path.startsWith("/")) path = path.replaceFirst("/", "");
+            String path = Paths.get(UpdateManager.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
             return UpdateUtil.cleanFileSeparators(path);
         } catch (URISyntaxException e) {
             e.printStackTrace();
@@ -239,6 +760,128 @@ public class UpdateManager {
         }
     }
 
+    /**
+     * Sets the maximum number of parallel connections used to download a new version.
+     * Only applies when the server supports range requests. Defaults to 4.
+     *
+     * @param connections Number of connections, 1 for a single (resumable) stream
+     */
+    public void setDownloadConnections(int connections) {
+        downloadConnections = Math.max(1, connections);
+    }
+
+    /**
+     * When enabled, releases that publish a binary patch for the running version are updated by downloading
+     * only the patch. Falls back to downloading the full JAR if no patch exists or it fails to apply.
+     * Enabled by default.
+     */
+    public void setDeltaUpdates(boolean deltaUpdates) {
+        this.deltaUpdates = deltaUpdates;
+    }
+
+    /**
+     * Sets the directory of the download cache, defaults to a folder in the program's directory.
+     * Programs using the same directory download each release once, even when updating at the same time.
+     * The directory must belong to the current user, and is made accessible only by them.
+     *
+     * @param directory Cache directory, or null to always download directly
+     */
+    public void setDownloadCacheDirectory(String directory) {
+        downloadCache = directory == null ? null : DownloadCache.open(Paths.get(directory));
+    }
+
+    /**
+     * When enabled, the downloaded JAR is checked before patching. Every entry must match its CRC,
+     * the manifest must name an existing Main-Class, and signed JARs must have valid signatures.
+     * Enabled by default.
+     */
+    public void setValidateDownloads(boolean validateDownloads) {
+        this.validateDownloads = validateDownloads;
+    }
+
+    /**
+     * When enabled, releases that publish an entry manifest and an archive of changed entries are updated
+     * by downloading only the changed entries. Used when no binary patch is available.
+     * Falls back to downloading the full JAR if the archive doesn't contain every changed entry.
+     * Enabled by default.
+     */
+    public void setEntryUpdates(boolean entryUpdates) {
+        this.entryUpdates = entryUpdates;
+    }
+
+    /**
+     * Release info fetched within this many milliseconds is reused without contacting GitHub.
+     * Once expired, a conditional request is sent, which doesn't count against the API rate limit
+     * when the release hasn't changed. Defaults to 0, always revalidating.
+     * Only applies when releases come from GitHub.
+     *
+     * @param milliseconds How long cached release info is considered fresh
+     */
+    public void setMetadataCacheTTL(long milliseconds) {
+        if (RELEASE_SOURCE instanceof GitHubReleaseSource gitHubSource) gitHubSource.setMetadataCacheTTL(milliseconds);
+    }
+
+    /**
+     * When enabled, an update relaunches the program once instead of running separate patch and clean processes.
+     * The patch is applied from the running program where the platform allows it,
+     * or by a small helper process otherwise. Disabled by default.
+     */
+    public void setSingleRelaunch(boolean singleRelaunch) {
+        this.singleRelaunch = singleRelaunch;
+    }
+
+    /**
+     * When enabled, the first launch after an update creates a dynamic AppCDS archive for the new version
+     * when the program exits. Relaunches by the update process then use the archive, as can a custom launcher
+     * through {@link #getAppCdsArgs()}. Archives are stored in the update directory and are deleted on the next update.
+     * Disabled by default.
+     */
+    public void setAppCds(boolean appCds) {
+        this.appCds = appCds;
+    }
+
+    /**
+     * JVM args that launch the current version with its AppCDS archive, for use by a custom launcher.
+     *
+     * @return The JVM args, or an empty list if AppCDS is disabled or no archive exists yet
+     */
+    public List<String> getAppCdsArgs() {
+        Path archive = getAppCdsArchive(CURRENT_VERSION);
+        if (!appCds || !Files.isRegularFile(archive)) return Collections.emptyList();
+        return RelaunchOptions.getAppCdsArgs(archive);
+    }
+
+    private Path getAppCdsArchive(AppVersion version) {
+        return Paths.get(DIRECTORY + CDS_FOLDER, version + CDS_ARCHIVE_SUFFIX);
+    }
+
+    /**
+     * When enabled, update checks consider pre-releases, using the full release list instead of the latest release.
+     * Disabled by default.
+     */
+    public void setIncludePreReleases(boolean includePreReleases) {
+        this.includePreReleases = includePreReleases;
+    }
+
+    /**
+     * When enabled, each update process writes its {@link UpdateMetrics} as JSON to the log folder before exiting,
+     * ie 'metrics_download.json'. Files are replaced by the next update. Disabled by default.
+     */
+    public void setMetricsExport(boolean metricsExport) {
+        this.metricsExport = metricsExport;
+    }
+
+    private void exportMetrics() {
+        if (!metricsExport) return;
+        String folder = ZLogger.getDirectory() != null ? ZLogger.getDirectory() : DIRECTORY;
+        Path path = Paths.get(folder, METRICS_FILE_PREFIX + currentAction.toString().toLowerCase() + ".json");
+        try {
+            UpdateMetrics.writeJson(path);
+        } catch (IOException e) {
+            ZLogger.log("Failed to write update metrics: " + e.getMessage());
+        }
+    }
+
     public UpdateAction getCurrentUpdateAction() {
         return currentAction;
     }
@@ -255,6 +898,23 @@ public class UpdateManager {
         progressListeners.remove(progressListener);
     }
 
+    public void addDownloadProgressListener(IDownloadProgressListener progressListener) {
+        downloadProgressListeners.add(progressListener);
+    }
+
+    public void removeDownloadProgressListener(IDownloadProgressListener progressListener) {
+        downloadProgressListeners.remove(progressListener);
+    }
+
+    /**
+     * Sets how often progress listeners can be called. Progress in between is coalesced into the next update.
+     *
+     * @param updatesPerSecond Maximum progress updates per second, defaults to 20
+     */
+    public void setMaxProgressRate(int updatesPerSecond) {
+        progressReporter.setMaxRate(updatesPerSecond);
+    }
+
     ////////////////////////
     //  Updating Actions  //
     ////////////////////////
@@ -265,36 +925,35 @@ public class UpdateManager {
      * @return Success
      */
     private boolean downloadFile() {
+        if (latestRelease == null) latestRelease = includePreReleases ? fetchNewestIndexedRelease() : fetchLatestRelease();
+        if (latestRelease == null) return false;
+        progressReporter.reset();
+        // Fetched alongside the download, so it doesn't add any time
+        CompletableFuture<String> expectedChecksum = fetchExpectedChecksumAsync(latestRelease);
+        ReleaseAsset patchAsset = latestRelease.findPatchAsset(CURRENT_VERSION.toString());
+        if (deltaUpdates && downloadPatch(patchAsset)) {
+            byte[] sha256 = verifyRebuiltFile(expectedChecksum.join(), patchAsset.url());
+            if (sha256 != null) return finishDownload(sha256);
+        }
+        ReleaseAsset manifestAsset = latestRelease.findAsset(JarEntryPatch.MANIFEST_SUFFIX);
+        ReleaseAsset archiveAsset = latestRelease.findAsset(JarEntryPatch.ARCHIVE_SUFFIX);
+        if (entryUpdates && downloadChangedEntries(manifestAsset, archiveAsset)) {
+            byte[] sha256 = verifyRebuiltFile(expectedChecksum.join(), manifestAsset.url(), archiveAsset.url());
+            if (sha256 != null) return finishDownload(sha256);
+        }
         ZLogger.log("Downloading new version from " + latestRelease.downloadURL + "...");
         try {
-            if (latestRelease == null) latestRelease = fetchLatestRelease();
-            if (latestRelease == null) return false;
-            HttpURLConnection httpConnection = (HttpURLConnection) (new URL(latestRelease.downloadURL).openConnection());
-            int fileSize = httpConnection.getContentLength();
-            BufferedInputStream inputStream = new BufferedInputStream(httpConnection.getInputStream());
-            BufferedOutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(Paths.get(DIRECTORY + TEMP_FILE_NAME)));
-            byte[] data = new byte[BYTE_BUFFER_SIZE];
-            int totalBytesRead = 0;
-            int numBytesRead;
-            int currentProgressPercent = 0;
-            while ((numBytesRead = inputStream.read(data, 0, BYTE_BUFFER_SIZE)) >= 0) {
-                outputStream.write(data, 0, numBytesRead);
-                totalBytesRead += numBytesRead;
-                int newProgressPercent = Math.round((float) totalBytesRead / fileSize * 100);
-                if (newProgressPercent != currentProgressPercent) {
-                    currentProgressPercent = newProgressPercent;
-                    for (IUpdateProgressListener listener : progressListeners) {
-                        int finalCurrentProgressPercent = currentProgressPercent;
-                        SwingUtilities.invokeLater(() -> listener.onDownloadProgress(finalCurrentProgressPercent));
-                    }
-                }
+            ReleaseAsset asset = latestRelease.getAsset(latestRelease.fileName);
+            long size = asset == null ? -1 : asset.size();
+            byte[] sha256 = downloadAsset(latestRelease.downloadURL, size, expectedChecksum::join, Paths.get(DIRECTORY + TEMP_FILE_NAME), downloadConnections, progressReporter);
+            if (!verifyChecksum(sha256, expectedChecksum.join())) {
+                if (downloadCache != null) downloadCache.evict(latestRelease.downloadURL);
+                Files.deleteIfExists(Paths.get(DIRECTORY + TEMP_FILE_NAME));
+                for (IUpdateProgressListener listener : progressListeners)
+                    SwingUtilities.invokeLater(listener::onDownloadFailed);
+                return false;
             }
-            inputStream.close();
-            outputStream.close();
-            for (IUpdateProgressListener listener : progressListeners) {
-                SwingUtilities.invokeLater(listener::onDownloadComplete);
-            }
-            return true;
+            return finishDownload(sha256);
         } catch (IOException e) {
             ZLogger.log("Error while downloading file!");
             ZLogger.log(e.getStackTrace());
@@ -304,21 +963,258 @@ public class UpdateManager {
         }
     }
 
+    private byte[] downloadAsset(ReleaseAsset asset, Path target, int connections, RangedDownloader.IProgressCallback progressCallback) throws IOException {
+        return downloadAsset(asset.url(), asset.size(), null, target, connections, progressCallback);
+    }
+
+    /**
+     * Downloads a release asset through the download cache, so a file downloaded by another
+     * process of this program is copied instead. Files that are already local skip the cache.
+     *
+     * @param size           Published size of the file, or -1 if unknown
+     * @param expectedSha256 Supplies the published checksum, or null if there is none
+     * @return The SHA-256 hash of the file
+     */
+    private byte[] downloadAsset(String url, long size, Supplier<String> expectedSha256, Path target, int connections,
+                                 RangedDownloader.IProgressCallback progressCallback) throws IOException {
+        if (downloadCache != null && !UpdateUtil.isFileURL(url))
+            return downloadCache.download(url, target, connections, bandwidthLimiter, progressCallback, size, expectedSha256);
+        RangedDownloader downloader = new RangedDownloader(url, target, connections, progressCallback);
+        downloader.setBandwidthLimiter(bandwidthLimiter);
+        downloader.download();
+        return downloader.getSha256();
+    }
+
+    /**
+     * Finds the published SHA-256 checksum of a release's JAR file, either from a checksum file
+     * attached to the release (ie App.jar.sha256) or from the release notes.
+     *
+     * @return A future that completes with the lowercase hex checksum, or null if none was published
+     */
+    private CompletableFuture<String> fetchExpectedChecksumAsync(ReleaseVersion release) {
+        // Matched by exact name, since a checksum for another file would fail every download
+        ReleaseAsset asset = release.getAsset(release.fileName + CHECKSUM_SUFFIX);
+        if (asset == null) return CompletableFuture.completedFuture(UpdateUtil.findSha256(release.body, release.fileName));
+        // Not the background executor, since the download waits on this while running there
+        return CompletableFuture.supplyAsync(() -> {
+            try (InputStream inputStream = RELEASE_SOURCE.openAsset(asset)) {
+                return UpdateUtil.findSha256(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8), release.fileName);
+            } catch (IOException e) {
+                ZLogger.log("Failed to fetch checksum file, checking release notes instead.");
+                return UpdateUtil.findSha256(release.body, release.fileName);
+            }
+        });
+    }
+
+    /**
+     * Checks a JAR rebuilt from a patch or changed entries against the published checksum.
+     * The hashes inside a patch or entry manifest come from the same place as the patch itself,
+     * so only the published checksum shows the result is the released file.
+     *
+     * @param assetURLs The assets the file was built from, evicted from the cache if it doesn't match
+     * @return The hash of the rebuilt file, or null if it doesn't match and was deleted, so a full download is needed
+     */
+    private byte[] verifyRebuiltFile(String expected, String... assetURLs) {
+        Path tempFilePath = Paths.get(DIRECTORY + TEMP_FILE_NAME);
+        try {
+            byte[] sha256 = UpdateUtil.hash(tempFilePath);
+            if (verifyChecksum(sha256, expected)) return sha256;
+            ZLogger.log("Rebuilt file doesn't match the release, falling back to full download.");
+            if (downloadCache != null) {
+                for (String url : assetURLs) downloadCache.evict(url);
+            }
+            Files.deleteIfExists(tempFilePath);
+        } catch (IOException e) {
+            ZLogger.log("Failed to verify rebuilt file, falling back to full download: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Compares the hash computed while downloading with the published checksum.
+     * Releases without a published checksum are accepted.
+     */
+    private boolean verifyChecksum(byte[] sha256, String expected) {
+        if (expected == null) {
+            ZLogger.log("No checksum published for this release, skipping verification.");
+            return true;
+        }
+        String actual = HexFormat.of().formatHex(sha256);
+        if (actual.equals(expected)) {
+            ZLogger.log("Checksum verified: " + actual);
+            return true;
+        }
+        UpdateMetrics.increment(UpdateMetrics.Counter.CHECKSUM_FAILURES);
+        ZLogger.log("Checksum mismatch, refusing to install download!");
+        ZLogger.log("Expected: " + expected);
+        ZLogger.log("Actual: " + actual);
+        return false;
+    }
+
+    /**
+     * Downloads a binary patch from the running version to the latest version,
+     * then rebuilds the new JAR file from the running JAR file.
+     *
+     * @return True if the new JAR was built, false if a full download is needed
+     */
+    private boolean downloadPatch(ReleaseAsset patchAsset) {
+        if (patchAsset == null) return false;
+        if (launchPath == null || !Files.isRegularFile(Paths.get(launchPath))) return false;
+        ZLogger.log("Downloading patch from " + patchAsset.url() + "...");
+        Path patchPath = Paths.get(DIRECTORY + TEMP_FILE_NAME + PATCH_FILE_SUFFIX);
+        Path tempFilePath = Paths.get(DIRECTORY + TEMP_FILE_NAME);
+        // Built under a name of this process, then moved into place, since the temp file may be linked to the download cache
+        Path stagingPath = UpdateUtil.getStagingPath(tempFilePath);
+        try {
+            downloadAsset(patchAsset, patchPath, downloadConnections, progressReporter);
+            DeltaPatch.apply(Paths.get(launchPath), patchPath, stagingPath);
+            UpdateUtil.moveAtomically(stagingPath, tempFilePath);
+            ZLogger.log("Patch applied successfully.");
+            return true;
+        } catch (IOException e) {
+            ZLogger.log("Failed to apply patch, falling back to full download: " + e.getMessage());
+            if (downloadCache != null) downloadCache.evict(patchAsset.url());
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(patchPath);
+                Files.deleteIfExists(stagingPath);
+            } catch (IOException e) {
+                ZLogger.log("Failed to delete patch file: " + patchPath);
+            }
+        }
+    }
+
+    /**
+     * Downloads the entries that changed since the running version,
+     * then writes the new JAR by merging them with the unchanged entries of the running JAR.
+     *
+     * @return True if the new JAR was built, false if a full download is needed
+     */
+    private boolean downloadChangedEntries(ReleaseAsset manifestAsset, ReleaseAsset archiveAsset) {
+        if (manifestAsset == null || archiveAsset == null) return false;
+        if (launchPath == null || !Files.isRegularFile(Paths.get(launchPath))) return false;
+        Path manifestPath = Paths.get(DIRECTORY + TEMP_FILE_NAME + JarEntryPatch.MANIFEST_SUFFIX);
+        Path archivePath = Paths.get(DIRECTORY + TEMP_FILE_NAME + JarEntryPatch.ARCHIVE_SUFFIX);
+        Path tempFilePath = Paths.get(DIRECTORY + TEMP_FILE_NAME);
+        Path stagingPath = UpdateUtil.getStagingPath(tempFilePath);
+        try {
+            downloadAsset(manifestAsset, manifestPath, 1, (bytes, total) -> {
+            });
+            JarEntryPatch.EntryManifest manifest = JarEntryPatch.readManifest(manifestPath);
+            // The archive only holds entries that changed since its base, so any other JAR can't be rebuilt from it
+            if (!manifest.matchesBase(CURRENT_VERSION.toString(), UpdateUtil.hash(Paths.get(launchPath)))) {
+                ZLogger.log("Entry update was built for " + manifest.baseVersion() + ", falling back to full download.");
+                return false;
+            }
+            Map<String, String> oldEntries = JarEntryPatch.hashEntries(Paths.get(launchPath));
+            int changedEntries = JarEntryPatch.findChangedEntries(manifest.entries(), oldEntries).size();
+            ZLogger.log("Downloading " + changedEntries + " changed entries from " + archiveAsset.url() + "...");
+            downloadAsset(archiveAsset, archivePath, downloadConnections, progressReporter);
+            JarEntryPatch.merge(Paths.get(launchPath), oldEntries, manifest.entries(), archivePath, stagingPath);
+            UpdateUtil.moveAtomically(stagingPath, tempFilePath);
+            ZLogger.log("Changed entries merged successfully.");
+            return true;
+        } catch (IOException e) {
+            ZLogger.log("Failed to merge changed entries, falling back to full download: " + e.getMessage());
+            if (downloadCache != null) {
+                downloadCache.evict(manifestAsset.url());
+                downloadCache.evict(archiveAsset.url());
+            }
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(manifestPath);
+                Files.deleteIfExists(archivePath);
+                Files.deleteIfExists(stagingPath);
+            } catch (IOException e) {
+                ZLogger.log("Failed to delete entry update files.");
+            }
+        }
+    }
+
+    /**
+     * Validates the downloaded JAR and stages it, then notifies listeners of the result.
+     *
+     * @param sha256 Hash computed while downloading, or null if the file was built locally
+     */
+    private boolean finishDownload(byte[] sha256) {
+        if (validateDownloads && !validateDownload()) {
+            for (IUpdateProgressListener listener : progressListeners)
+                SwingUtilities.invokeLater(listener::onDownloadFailed);
+            return false;
+        }
+        stageDownload(sha256);
+        return notifyDownloadComplete();
+    }
+
+    /**
+     * Checks the downloaded JAR in parallel before it's allowed to replace the installed program.
+     * A corrupt download is deleted, so the next update attempt starts over.
+     */
+    private boolean validateDownload() {
+        ZLogger.log("Validating download...");
+        long validationStart = System.currentTimeMillis();
+        Path tempFilePath = Paths.get(DIRECTORY + TEMP_FILE_NAME);
+        try {
+            JarValidator.validate(tempFilePath);
+            UpdateMetrics.record(UpdateMetrics.Histogram.VALIDATION_MS, System.currentTimeMillis() - validationStart);
+            ZLogger.log("Download validated in " + (System.currentTimeMillis() - validationStart) + "ms.");
+            return true;
+        } catch (IOException e) {
+            String reason = e.getMessage();
+            UpdateMetrics.increment(UpdateMetrics.Counter.VALIDATION_FAILURES);
+            ZLogger.log("Downloaded file failed validation: " + reason);
+            for (IUpdateProgressListener listener : progressListeners)
+                SwingUtilities.invokeLater(() -> listener.onVerificationFailed(reason));
+            try {
+                Files.deleteIfExists(tempFilePath);
+            } catch (IOException ex) {
+                ZLogger.log("Failed to delete invalid download.");
+            }
+            return false;
+        }
+    }
+
+    private boolean notifyDownloadComplete() {
+        for (IUpdateProgressListener listener : progressListeners) {
+            SwingUtilities.invokeLater(listener::onDownloadComplete);
+        }
+        return true;
+    }
+
+    /**
+     * Notifies all progress listeners, with percent listeners only being notified when the percent changes.
+     * Called on the EventDispatchThread.
+     */
+    private void dispatchProgress(TransferProgress progress) {
+        int newProgressPercent = progress.getPercent();
+        if (newProgressPercent != -1 && newProgressPercent != currentProgressPercent) {
+            currentProgressPercent = newProgressPercent;
+            for (IUpdateProgressListener listener : progressListeners)
+                listener.onDownloadProgress(newProgressPercent);
+        }
+        for (IDownloadProgressListener listener : downloadProgressListeners)
+            listener.onTransferProgress(progress);
+    }
+
     /**
      * Copies the new JAR from the working directory to the user's original directory.
+     * The JAR is staged next to the original and swapped in atomically, so a crash never leaves a partial file.
      */
-    private void patch() {
+    private boolean patch() {
         ZLogger.log("Copying file...");
         ZLogger.log("Target: " + DIRECTORY + TEMP_FILE_NAME);
         ZLogger.log("Destination: " + launchPath);
         Exception exception = null;
         for (int i = 1; i <= MAX_ACTION_ATTEMPTS; i++) {
             try {
-                Files.copy(Paths.get(DIRECTORY + TEMP_FILE_NAME), Paths.get(launchPath), StandardCopyOption.REPLACE_EXISTING);
+                UpdateUtil.replaceFileAtomically(Paths.get(DIRECTORY + TEMP_FILE_NAME), Paths.get(launchPath));
                 ZLogger.log("File copied successfully.");
-                return;
+                return true;
             } catch (IOException e) {
                 ZLogger.log("Failed to copy file, retrying...");
+                UpdateMetrics.increment(UpdateMetrics.Counter.FILE_RETRIES);
                 exception = e;
                 try {
                     Thread.sleep(ACTION_RETRY_DELAY_MS);
@@ -329,6 +1225,7 @@ public class UpdateManager {
         }
         ZLogger.log("Failed to copy file!");
         ZLogger.log(exception.getStackTrace());
+        return false;
     }
 
     /**
@@ -345,6 +1242,7 @@ public class UpdateManager {
                 return;
             } catch (IOException e) {
                 ZLogger.log("Failed to delete file, retrying...");
+                UpdateMetrics.increment(UpdateMetrics.Counter.FILE_RETRIES);
                 exception = e;
                 try {
                     Thread.sleep(ACTION_RETRY_DELAY_MS);
@@ -357,4 +1255,33 @@ public class UpdateManager {
         ZLogger.log(exception.getStackTrace());
     }
 
+    /**
+     * Deletes AppCDS archives created for other versions of the program.
+     */
+    private void cleanAppCdsArchives() {
+        File[] files = new File(DIRECTORY + CDS_FOLDER).listFiles();
+        if (files == null) return;
+        String currentArchive = getAppCdsArchive(CURRENT_VERSION).getFileName().toString();
+        for (File file : files) {
+            if (!file.getName().endsWith(CDS_ARCHIVE_SUFFIX) || file.getName().equals(currentArchive)) continue;
+            if (file.delete()) ZLogger.log("Deleted old AppCDS archive: " + file.getPath());
+            else ZLogger.log("Failed to delete old AppCDS archive: " + file.getPath());
+        }
+    }
+
+    /**
+     * Deletes a temporary JAR file left behind by an update, ie if the program was closed before cleaning.
+     * Only called when there is no staged update, since a staged update uses the same file, see {@link #hasStagedUpdate()}.
+     */
+    private void cleanLeftovers() {
+        if (!VALID_DIRECTORY) return;
+        clearStagedUpdate();
+        try {
+            if (Files.deleteIfExists(Paths.get(DIRECTORY + TEMP_FILE_NAME)))
+                ZLogger.log("Deleted leftover temporary file: " + DIRECTORY + TEMP_FILE_NAME);
+        } catch (IOException e) {
+            ZLogger.log("Failed to delete leftover temporary file: " + DIRECTORY + TEMP_FILE_NAME);
+        }
+    }
+
 }
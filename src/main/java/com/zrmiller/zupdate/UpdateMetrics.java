@@ -0,0 +1,170 @@
+package com.zrmiller.zupdate;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.zrmiller.zupdate.data.MetricsSnapshot;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms describing how updates perform, ie how long each phase takes and how fast downloads are.
+ * <p>
+ * Each update process records its own metrics. Recording never allocates, so it can be used from download loops.
+ * Applications can read the metrics with {@link #snapshot()}, or have the update process write them
+ * next to the log files with {@link UpdateManager#setMetricsExport(boolean)}.
+ */
+public class UpdateMetrics {
+
+    /**
+     * Running totals.
+     */
+    public enum Counter {
+        BYTES_DOWNLOADED,
+        DOWNLOADS_FAILED,
+        DOWNLOAD_CACHE_HITS,
+        CHECKSUM_FAILURES,
+        VALIDATION_FAILURES,
+        DOWNLOAD_RETRIES,
+        THROTTLED_MS,
+        FILE_RETRIES,
+        METADATA_REQUESTS,
+        METADATA_CACHE_HITS,
+    }
+
+    /**
+     * Distributions of recorded values. Durations are in milliseconds.
+     */
+    public enum Histogram {
+        METADATA_FETCH_MS,
+        TIME_TO_FIRST_BYTE_MS,
+        DOWNLOAD_MS,
+        DOWNLOAD_BYTES_PER_SECOND,
+        VALIDATION_MS,
+        PATCH_MS,
+        CLEAN_MS,
+        TOTAL_UPDATE_MS,
+    }
+
+    // Bucket i holds values with a bit length of i, so 64 buckets cover every non-negative long
+    private static final int BUCKETS = 64;
+
+    private static final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private static final LogHistogram[] histograms = new LogHistogram[Histogram.values().length];
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    static {
+        for (int i = 0; i < counters.length; i++) counters[i] = new LongAdder();
+        for (int i = 0; i < histograms.length; i++) histograms[i] = new LogHistogram();
+    }
+
+    private UpdateMetrics() {
+
+    }
+
+    public static void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    public static void add(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    /**
+     * @param value A non-negative value, negative values are recorded as 0
+     */
+    public static void record(Histogram histogram, long value) {
+        histograms[histogram.ordinal()].record(Math.max(0, value));
+    }
+
+    public static MetricsSnapshot snapshot() {
+        Map<String, Long> counterValues = new LinkedHashMap<>();
+        for (Counter counter : Counter.values()) counterValues.put(counter.name(), counters[counter.ordinal()].sum());
+        Map<String, MetricsSnapshot.HistogramSnapshot> histogramValues = new LinkedHashMap<>();
+        for (Histogram histogram : Histogram.values()) {
+            MetricsSnapshot.HistogramSnapshot snapshot = histograms[histogram.ordinal()].snapshot();
+            if (snapshot.count() > 0) histogramValues.put(histogram.name(), snapshot);
+        }
+        return new MetricsSnapshot(System.currentTimeMillis(), counterValues, histogramValues);
+    }
+
+    public static void reset() {
+        for (LongAdder counter : counters) counter.reset();
+        for (LogHistogram histogram : histograms) histogram.reset();
+    }
+
+    /**
+     * Writes a snapshot as JSON, replacing the file if it exists.
+     */
+    public static void writeJson(Path path) throws IOException {
+        MetricsSnapshot snapshot = snapshot();
+        JsonObject json = new JsonObject();
+        json.addProperty("time", snapshot.time());
+        JsonObject counterJson = new JsonObject();
+        snapshot.counters().forEach(counterJson::addProperty);
+        json.add("counters", counterJson);
+        JsonObject histogramJson = new JsonObject();
+        snapshot.histograms().forEach((name, histogram) -> {
+            JsonObject values = new JsonObject();
+            values.addProperty("count", histogram.count());
+            values.addProperty("min", histogram.min());
+            values.addProperty("mean", histogram.getMean());
+            values.addProperty("p50", histogram.getPercentile(50));
+            values.addProperty("p90", histogram.getPercentile(90));
+            values.addProperty("max", histogram.max());
+            JsonArray buckets = new JsonArray();
+            for (long bucket : histogram.buckets()) buckets.add(bucket);
+            values.add("buckets", buckets);
+            histogramJson.add(name, values);
+        });
+        json.add("histograms", histogramJson);
+        Files.writeString(path, gson.toJson(json), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A lock-free histogram with power of two buckets.
+     */
+    private static class LogHistogram {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+        void record(long value) {
+            buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            min.accumulateAndGet(value, Math::min);
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        MetricsSnapshot.HistogramSnapshot snapshot() {
+            long[] values = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) values[i] = buckets.get(i);
+            long total = count.get();
+            if (total == 0) return new MetricsSnapshot.HistogramSnapshot(0, 0, 0, 0, values);
+            return new MetricsSnapshot.HistogramSnapshot(total, sum.get(), min.get(), max.get(), values);
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+            count.set(0);
+            sum.set(0);
+            min.set(Long.MAX_VALUE);
+            max.set(Long.MIN_VALUE);
+        }
+
+    }
+
+}
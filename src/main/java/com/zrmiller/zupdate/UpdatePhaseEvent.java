@@ -0,0 +1,40 @@
+package com.zrmiller.zupdate;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event covering one {@link UpdateAction} of the update process.
+ * Only recorded while a Flight Recorder recording is running.
+ */
+@Name("com.zrmiller.zupdate.UpdatePhase")
+@Label("Update Phase")
+@Category("ZUpdate")
+@Description("A single phase of the update process, each of which runs in its own process")
+@StackTrace(false)
+class UpdatePhaseEvent extends Event {
+
+    @Label("Action")
+    String action;
+
+    @Label("Version")
+    @Description("Version being updated to, if known")
+    String version;
+
+    @Label("Success")
+    boolean success;
+
+    void record(UpdateAction action, String version, boolean success) {
+        end();
+        if (!shouldCommit()) return;
+        this.action = action.toString();
+        this.version = version;
+        this.success = success;
+        commit();
+    }
+
+}
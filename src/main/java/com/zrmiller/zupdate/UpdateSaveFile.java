@@ -1,8 +1,25 @@
 package com.zrmiller.zupdate;
 
+/**
+ * Update info saved to disk between program runs.
+ */
 public class UpdateSaveFile {
 
     public String tag;
     public boolean autoUpdate;
 
+    // A verified download waiting to be installed
+    public String stagedTag;
+    public String stagedSha256;
+    // Size and modified time of the staged file when it was last hashed, so it only needs hashing again if it changed
+    public long stagedSize;
+    public long stagedModified;
+
+    // Cached response of the latest release request
+    public String releaseURL;
+    public String releaseJson;
+    public String etag;
+    public String lastModified;
+    public long fetchTime;
+
 }
@@ -1,10 +1,27 @@
 package com.zrmiller.zupdate;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class UpdateUtil {
 
+    private static final String STAGED_FILE_SUFFIX = ".new";
+    private static final int HASH_BUFFER_SIZE = 1024 * 16;
+    private static final String FILE_SCHEME = "file:";
+    private static final Pattern sha256Pattern = Pattern.compile("(?<![0-9a-fA-F])[0-9a-fA-F]{64}(?![0-9a-fA-F])");
+
     public static boolean validateDirectory(String directory) {
         File file = new File(directory);
         if (file.exists()) return file.isDirectory();
@@ -15,4 +32,159 @@ public class UpdateUtil {
         return path.replaceAll("[/\\\\]", Matcher.quoteReplacement(File.separator));
     }
 
+    /**
+     * Replaces a file without ever leaving it partially written.
+     * The source is copied to a staging file next to the target, so both are on the same file system,
+     * flushed to disk, then renamed over the target in a single atomic step.
+     * Falls back to a regular move if the file system doesn't support atomic moves.
+     *
+     * @param source File to copy
+     * @param target File to replace
+     */
+    public static void replaceFileAtomically(Path source, Path target) throws IOException {
+        Path staged = getStagingPath(target);
+        try {
+            // transferTo lets the OS copy directly between files, avoiding a copy through the Java heap
+            try (FileChannel input = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel output = FileChannel.open(staged, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = input.size();
+                long position = 0;
+                while (position < size) position += input.transferTo(position, size - position, output);
+                output.force(true);
+            }
+            moveAtomically(staged, target);
+            syncDirectory(target.toAbsolutePath().getParent());
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    /**
+     * Replaces a file with a hard link to the source, so no data is copied.
+     * The link is made under a staging name, then renamed over the target like {@link #replaceFileAtomically(Path, Path)},
+     * which is used instead if the file system doesn't support hard links or the files are on different file systems.
+     * Both paths then share the same data, so the target must only ever be replaced, never written in place.
+     *
+     * @param source File to link to
+     * @param target File to replace
+     */
+    public static void linkFileAtomically(Path source, Path target) throws IOException {
+        Path staged = getStagingPath(target);
+        try {
+            Files.deleteIfExists(staged);
+            try {
+                Files.createLink(staged, source);
+            } catch (IOException | UnsupportedOperationException e) {
+                replaceFileAtomically(source, target);
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(source, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            moveAtomically(staged, target);
+            syncDirectory(target.toAbsolutePath().getParent());
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    /**
+     * A staging file next to the target, named after this process so processes sharing a directory never write the same file.
+     */
+    public static Path getStagingPath(Path target) {
+        return target.resolveSibling(target.getFileName() + "." + ProcessHandle.current().pid() + STAGED_FILE_SUFFIX);
+    }
+
+    /**
+     * Renames a file over the target in a single step, falling back to a regular move if the file system doesn't support atomic moves.
+     */
+    public static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static boolean isFileURL(String url) {
+        return url.regionMatches(true, 0, FILE_SCHEME, 0, FILE_SCHEME.length());
+    }
+
+    /**
+     * Opens a file or http(s) URL for reading.
+     *
+     * @throws IOException If the file doesn't exist or the request failed
+     */
+    public static InputStream openURL(String url) throws IOException {
+        if (!isFileURL(url)) return HttpUtil.openStream(url);
+        return Files.newInputStream(toPath(url));
+    }
+
+    /**
+     * @throws IOException If the URL isn't a valid file URL
+     */
+    public static Path toPath(String fileURL) throws IOException {
+        try {
+            return Path.of(URI.create(fileURL));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Bad URL: " + fileURL, e);
+        }
+    }
+
+    /**
+     * Finds a SHA-256 checksum in text, ie a checksum file or release notes.
+     * A checksum on the same line as the file name is preferred, ie {@code <hash>  App.jar}.
+     * Otherwise the text must contain exactly one checksum.
+     *
+     * @return The lowercase hex checksum, or null if none was found
+     */
+    public static String findSha256(String text, String fileName) {
+        if (text == null) return null;
+        String onlyHash = null;
+        int hashCount = 0;
+        for (String line : text.split("\\R")) {
+            Matcher matcher = sha256Pattern.matcher(line);
+            while (matcher.find()) {
+                if (fileName != null && line.contains(fileName)) return matcher.group().toLowerCase();
+                onlyHash = matcher.group();
+                hashCount++;
+            }
+        }
+        return hashCount == 1 ? onlyHash.toLowerCase() : null;
+    }
+
+    /**
+     * @return The SHA-256 hash of a file
+     */
+    public static byte[] hash(Path path) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            byte[] data = new byte[HASH_BUFFER_SIZE];
+            int numBytesRead;
+            while ((numBytesRead = inputStream.read(data)) >= 0) digest.update(data, 0, numBytesRead);
+        }
+        return digest.digest();
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java implementation is required to support SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Flushes a directory to disk so a rename inside it survives a crash.
+     * Not supported on every platform (ie Windows), in which case this does nothing.
+     */
+    private static void syncDirectory(Path directory) {
+        if (directory == null) return;
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignore) {
+        }
+    }
+
 }
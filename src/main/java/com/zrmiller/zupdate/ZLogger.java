@@ -4,14 +4,37 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * A simple logging implementation that works through program starts.
+ * <p>
+ * In async mode, logging only adds a record to a buffer, and a background thread does the formatting
+ * and writing in batches. Use async mode when logging from performance sensitive code, ie download loops.
+ * Buffered records are written on {@link #close()}, which the update process calls before exiting.
+ * <p>
+ * Log files roll over once they reach a maximum size or age. Rolled files are gzip compressed on a background
+ * thread, and old files are deleted once there are too many or they take up too much space.
+ * <p>
+ * In mapped mode, records are written to a memory mapped file instead of a text file (see {@link MappedLogSink}),
+ * so the end of the log survives the JVM crashing. Use {@link MappedLogReader} to convert a mapped log to text.
  */
 // FIXME : Add support for legacy log file format?
 public class ZLogger {
@@ -19,18 +42,43 @@ public class ZLogger {
     private static final String FILE_PREFIX = "log_";
     private static final String SUBFOLDER = "logs";
     private static final String LOG_ARG_PREFIX = "logfile:";
-    private static final int MAX_LOG_FILES = 5;
+    private static final String FILE_EXTENSION = ".txt";
+    private static final String MAPPED_FILE_EXTENSION = ".mlog";
+    private static final String COMPRESSED_EXTENSION = ".gz";
+    private static final long COMPRESSOR_SHUTDOWN_TIMEOUT_MS = 2000;
+
+    private static int maxLogFiles = 5;
+    private static long maxTotalBytes = 1024 * 1024 * 50;
+    private static long maxFileBytes = 1024 * 1024 * 10;
+    private static long maxFileAgeMs = 0;
+    private static long currentFileBytes;
+    private static long currentFileStart;
+    private static ExecutorService compressor;
+    private static String lastFileBase;
+    private static int lastFileIndex;
 
     private static BufferedWriter writer;
+    private static MappedLogSink mappedSink;
+    private static boolean mapped;
     private static String logFile;
     private static String directory;
-    private static boolean isOpen = false;
+    private static volatile boolean isOpen = false;
+    private static volatile AsyncLogWriter asyncWriter;
 
-    private static final SimpleDateFormat fileNameFormatter = new SimpleDateFormat("yyyy-MM-dd_HH'h'mm'm'ss's'");
-    private static final SimpleDateFormat timestampFormatter = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
-    private static final String regString = FILE_PREFIX + "(?<year>\\d+)-(?<month>\\d+)-(?<day>\\d+)_(?<hour>\\d+)h(?<minute>\\d+)m(?<second>\\d+)s\\.txt";
+    private static final DateTimeFormatter fileNameFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH'h'mm'm'ss's'");
+    private static final DateTimeFormatter timestampFormatter = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+    private static final Pattern logFilePattern = Pattern.compile(FILE_PREFIX + "\\d+-\\d+-\\d+_\\d+h\\d+m\\d+s(_\\d+)?\\.(txt|mlog)(\\.gz)?");
 
     public static void open(String appDirectory, String[] args) {
+        open(appDirectory, args, false);
+    }
+
+    /**
+     * @param appDirectory Directory to create the log folder in
+     * @param args         Program args, used to continue the log file of a previous update process
+     * @param async        Write on a background thread instead of the logging thread
+     */
+    public static void open(String appDirectory, String[] args, boolean async) {
         directory = UpdateUtil.cleanFileSeparators(appDirectory) + SUBFOLDER;
         System.out.println(directory);
         if (!UpdateUtil.validateDirectory(directory)) {
@@ -45,18 +93,31 @@ public class ZLogger {
             }
         }
         if (logFile == null) {
-            String time = fileNameFormatter.format(System.currentTimeMillis());
-            logFile = directory + File.separator + FILE_PREFIX + time + ".txt";
+            logFile = getNewLogFilePath();
             newFile = true;
-        }
+        } else mapped = logFile.endsWith(MAPPED_FILE_EXTENSION);
         try {
-            if (newFile) {
+            if (mapped) {
+                mappedSink = new MappedLogSink(Paths.get(logFile));
+            } else if (newFile) {
                 writer = new BufferedWriter(new FileWriter(logFile));
             } else writer = new BufferedWriter(new FileWriter(logFile, true));
         } catch (IOException e) {
             e.printStackTrace();
         }
+        File file = new File(logFile);
+        currentFileBytes = mappedSink != null ? mappedSink.size() : file.length();
+        currentFileStart = newFile ? System.currentTimeMillis() : file.lastModified();
         isOpen = true;
+        if (async) asyncWriter = new AsyncLogWriter();
+    }
+
+    /**
+     * Writes new log files to a memory mapped file instead of a text file. Must be called before {@link #open}.
+     * Update processes continuing an existing log file use the same format as that file.
+     */
+    public static void setMapped(boolean mapped) {
+        ZLogger.mapped = mapped;
     }
 
     public static void err(String message) {
@@ -68,19 +129,146 @@ public class ZLogger {
     }
 
     public static void log(String message, boolean error) {
+        AsyncLogWriter async = asyncWriter;
+        if (async != null && async.offer(System.currentTimeMillis(), message, error)) return;
+        long time = System.currentTimeMillis();
+        writeRecord(time, formatTimestamp(time), message, error);
+        flushWriter();
+    }
+
+    /**
+     * Prints a message and writes it to the log file, without flushing.
+     *
+     * @return Number of characters (or bytes in mapped mode) written to the log file
+     */
+    static synchronized int writeRecord(long time, String timestamp, String message, boolean error) {
         if (error) System.err.println(message);
         else System.out.println(message);
-        if (!isOpen) return;
+        if (!isOpen || (writer == null && mappedSink == null)) return 0;
+        try {
+            int length;
+            if (mappedSink != null) {
+                length = mappedSink.append(time, message, error);
+            } else {
+                String line = timestamp + " | " + message + "\n";
+                writer.write(line);
+                length = line.length();
+            }
+            currentFileBytes += length;
+            if (shouldRoll()) roll();
+            return length;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    static synchronized void flushWriter() {
+        if (writer == null) return;
         try {
-            String time = timestampFormatter.format(System.currentTimeMillis());
-            time = time + " | ";
-            writer.write(time + message + "\n");
             writer.flush();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Sets when the current log file is closed and a new one is started.
+     *
+     * @param maxBytes Maximum size of a log file, 0 for no limit
+     * @param maxAgeMs Maximum time a log file is written to, 0 for no limit
+     */
+    public static synchronized void setRollingPolicy(long maxBytes, long maxAgeMs) {
+        maxFileBytes = Math.max(0, maxBytes);
+        maxFileAgeMs = Math.max(0, maxAgeMs);
+    }
+
+    /**
+     * Sets how many old log files are kept. The newest files are kept until either limit is reached.
+     *
+     * @param maxFiles Maximum number of log files
+     * @param maxBytes Maximum total size of all log files, 0 for no limit
+     */
+    public static synchronized void setRetentionPolicy(int maxFiles, long maxBytes) {
+        maxLogFiles = Math.max(1, maxFiles);
+        maxTotalBytes = Math.max(0, maxBytes);
+    }
+
+    private static boolean shouldRoll() {
+        if (maxFileBytes > 0 && currentFileBytes >= maxFileBytes) return true;
+        return maxFileAgeMs > 0 && System.currentTimeMillis() - currentFileStart >= maxFileAgeMs;
+    }
+
+    /**
+     * Closes the current log file and starts a new one. The old file is compressed in the background.
+     */
+    private static void roll() throws IOException {
+        String rolledFile = logFile;
+        logFile = getNewLogFilePath();
+        if (mappedSink != null) {
+            mappedSink.close();
+            mappedSink = new MappedLogSink(Paths.get(logFile));
+        } else {
+            writer.close();
+            writer = new BufferedWriter(new FileWriter(logFile));
+        }
+        currentFileBytes = 0;
+        currentFileStart = System.currentTimeMillis();
+        if (compressor == null) {
+            compressor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ZLogger Compressor");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        compressor.execute(() -> {
+            compress(Paths.get(rolledFile));
+            cleanOldLogFiles();
+        });
+    }
+
+    // Files are named by time, with a counter added if a file was already started during the same second
+    private static String getNewLogFilePath() {
+        String base = directory + File.separator + FILE_PREFIX + fileNameFormatter.format(LocalDateTime.now());
+        int index = base.equals(lastFileBase) ? lastFileIndex + 1 : 0;
+        String extension = mapped ? MAPPED_FILE_EXTENSION : FILE_EXTENSION;
+        String path;
+        while (true) {
+            path = index == 0 ? base + extension : base + "_" + index + extension;
+            if (!new File(path).exists() && !new File(path + COMPRESSED_EXTENSION).exists()) break;
+            index++;
+        }
+        lastFileBase = base;
+        lastFileIndex = index;
+        return path;
+    }
+
+    private static void compress(Path file) {
+        Path compressedFile = Paths.get(file + COMPRESSED_EXTENSION);
+        Path tempFile = Paths.get(compressedFile + ".tmp");
+        try {
+            try (InputStream inputStream = Files.newInputStream(file);
+                 OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(tempFile))) {
+                inputStream.transferTo(outputStream);
+            }
+            Files.move(tempFile, compressedFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(file);
+        } catch (NoSuchFileException e) {
+            // Already deleted by the retention policy
+        } catch (IOException e) {
+            System.err.println("Failed to compress log file: " + file);
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    static String formatTimestamp(long time) {
+        return timestampFormatter.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault()));
+    }
+
     public static void log(String[] messages) {
         for (String message : messages)
             log(message);
@@ -91,11 +279,45 @@ public class ZLogger {
             log(element.toString());
     }
 
+    /**
+     * @return The folder log files are written to, or null if the logger hasn't been opened
+     */
+    static String getDirectory() {
+        return directory;
+    }
+
     public static String getLaunchArg() {
         return LOG_ARG_PREFIX + logFile;
     }
 
     public static void close() {
+        AsyncLogWriter async = asyncWriter;
+        if (async != null) {
+            asyncWriter = null;
+            async.close();
+        }
+        closeWriter();
+        ExecutorService compressorService = compressor;
+        if (compressorService != null) {
+            compressorService.shutdown();
+            try {
+                compressorService.awaitTermination(COMPRESSOR_SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static synchronized void closeWriter() {
+        if (mappedSink != null) {
+            try {
+                mappedSink.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            mappedSink = null;
+            return;
+        }
         if (writer == null) return;
         try {
             writer.write("\n");
@@ -106,43 +328,39 @@ public class ZLogger {
         }
     }
 
+    /**
+     * Deletes the oldest log files once there are more than the max file count, or they exceed the max total size.
+     * File names are a zero padded timestamp followed by an optional counter, so they can be sorted by age
+     * without parsing dates.
+     */
     public static void cleanOldLogFiles() {
-        File dir = new File(directory);
-        File[] files = dir.listFiles();
-        ArrayList<Date> dates = new ArrayList<>();
+        if (directory == null) return;
+        File[] files = new File(directory).listFiles((dir, name) -> logFilePattern.matcher(name).matches());
         if (files == null) return;
-        // Convert file names to sortable dates
+        Arrays.sort(files, Comparator.comparing(ZLogger::getFileTimestamp).thenComparingInt(ZLogger::getFileIndex).reversed());
+        String currentFile = logFile == null ? null : new File(logFile).getName();
+        int fileCount = 0;
+        long totalBytes = 0;
         for (File file : files) {
-            if (!file.getName().matches(regString)) continue;
-            Date date;
-            try {
-                date = timestampFormatter.parse(fileNameToTimestamp(file.getName()));
-                dates.add(date);
-            } catch (ParseException ignore) {
-            }
-        }
-        final int MAX_FILE_DELETIONS = 20;
-        int attempts = 0;
-        // Delete old log files
-        while (dates.size() > MAX_LOG_FILES && attempts < MAX_FILE_DELETIONS) {
-            Date oldestDate = Collections.min(dates);
-            String fileTimestamp = fileNameFormatter.format(oldestDate);
-            String path = directory + File.separator + FILE_PREFIX + fileTimestamp + ".txt";
-            File file = new File(path);
-            if (file.delete()) log("Deleted old log file: " + path);
-            else log("Failed to delete file: " + path);
-            dates.remove(oldestDate);
-            attempts++;
+            fileCount++;
+            totalBytes += file.length();
+            boolean keep = fileCount <= maxLogFiles && (maxTotalBytes == 0 || totalBytes <= maxTotalBytes);
+            if (keep || file.getName().equals(currentFile)) continue;
+            if (file.delete()) log("Deleted old log file: " + file.getPath());
+            else log("Failed to delete file: " + file.getPath());
         }
     }
 
-    private static String fileNameToTimestamp(String fileName) {
-        return fileName.replaceFirst(FILE_PREFIX, "")
-                .replaceFirst("_", " ")
-                .replaceAll("-", "/")
-                .replaceAll("[hm]", ":")
-                .replaceAll("s", "")
-                .replaceAll("\\.txt", "");
+    private static String getFileTimestamp(File file) {
+        String name = file.getName();
+        return name.substring(0, name.indexOf('s', FILE_PREFIX.length()) + 1);
+    }
+
+    private static int getFileIndex(File file) {
+        String name = file.getName();
+        int start = getFileTimestamp(file).length();
+        if (name.charAt(start) != '_') return 0;
+        return Integer.parseInt(name.substring(start + 1, name.indexOf('.', start)));
     }
 
 }
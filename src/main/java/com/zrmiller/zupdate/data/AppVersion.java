@@ -1,11 +1,13 @@
 package com.zrmiller.zupdate.data;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * A version parsed from a tag in the format {@code v?X.Y.Z(-preN)?}, ie v1.2.3 or 1.2.3-pre4.
+ * <p>
+ * Tags are parsed in a single pass without regex. The version is packed into a single long,
+ * so comparing two versions is a single comparison.
+ */
 public class AppVersion implements Comparable<AppVersion> {
 
     // Public info
@@ -13,101 +15,156 @@ public class AppVersion implements Comparable<AppVersion> {
     public final boolean isPreRelease;
 
     // Internal
-    private String string;
+    private final String string;
     private final int major;
     private final int minor;
     private final int patch;
     private final int pre;
 
-    // Matching
-    private static final String matchString = "v?(?<major>\\d+)\\.(?<minor>\\d+)\\.(?<patch>\\d+)(-pre(?<pre>\\d+))?";
-    private static final Pattern pattern = Pattern.compile(matchString);
+    /**
+     * 16 bits each for major, minor, patch and pre-release, in that order.
+     * Stable releases use the max pre-release value, so they sort after their own pre-releases.
+     * Invalid versions sort before everything else. Versions with numbers too large to pack use {@link #NO_KEY},
+     * and are compared field by field instead.
+     */
+    private final long key;
+
+    private static final int FIELD_BITS = 16;
+    private static final int FIELD_MAX = 0xFFFF;
+    private static final int STABLE_PRE = FIELD_MAX;
+    private static final long INVALID_KEY = -1;
+    private static final long NO_KEY = Long.MIN_VALUE;
+    private static final String PRE_RELEASE_PREFIX = "-pre";
+
+    // Versions are immutable, so versions created through of() are shared
+    private static final int MAX_CACHE_SIZE = 1024;
+    private static final ConcurrentHashMap<String, AppVersion> cache = new ConcurrentHashMap<>();
 
     public AppVersion(String tag) {
-        Matcher matcher = null;
+        int major = -1;
+        int minor = -1;
+        int patch = -1;
+        int pre = -1;
+        boolean valid = false;
         if (tag != null) {
-            matcher = pattern.matcher(tag);
-            valid = matcher.matches();
-        } else {
-            valid = false;
+            int length = tag.length();
+            int index = length > 0 && tag.charAt(0) == 'v' ? 1 : 0;
+            int end = digitsEnd(tag, index);
+            major = parseNumber(tag, index, end);
+            if (major >= 0 && end < length && tag.charAt(end) == '.') {
+                index = end + 1;
+                end = digitsEnd(tag, index);
+                minor = parseNumber(tag, index, end);
+            }
+            if (minor >= 0 && end < length && tag.charAt(end) == '.') {
+                index = end + 1;
+                end = digitsEnd(tag, index);
+                patch = parseNumber(tag, index, end);
+            }
+            if (patch >= 0) {
+                if (end == length) {
+                    valid = true;
+                } else if (tag.startsWith(PRE_RELEASE_PREFIX, end)) {
+                    index = end + PRE_RELEASE_PREFIX.length();
+                    end = digitsEnd(tag, index);
+                    pre = parseNumber(tag, index, end);
+                    valid = pre >= 0 && end == length;
+                }
+            }
         }
         if (valid) {
-            major = Integer.parseInt(matcher.group("major"));
-            minor = Integer.parseInt(matcher.group("minor"));
-            patch = Integer.parseInt(matcher.group("patch"));
-            String preString = matcher.group("pre");
-            if (preString != null) {
-                isPreRelease = true;
-                pre = Integer.parseInt(matcher.group(5));
-            } else {
-                pre = -1;
-                isPreRelease = false;
-            }
+            this.major = major;
+            this.minor = minor;
+            this.patch = patch;
+            this.pre = pre;
+            isPreRelease = pre != -1;
         } else {
-            major = -1;
-            minor = -1;
-            patch = -1;
-            pre = -1;
+            this.major = -1;
+            this.minor = -1;
+            this.patch = -1;
+            this.pre = -1;
             isPreRelease = false;
         }
-        string = "v" + major + "." + minor + "." + patch;
-        if (isPreRelease) string += "-pre" + pre;
+        this.valid = valid;
+        key = createKey();
+        String string = "v" + this.major + "." + this.minor + "." + this.patch;
+        if (isPreRelease) string += PRE_RELEASE_PREFIX + this.pre;
+        this.string = string;
     }
 
-    // FIXME : Move this to an actual test
-    public static void runTest() {
-        AppVersion v1 = new AppVersion("v0.3.5");
-        AppVersion v2 = new AppVersion("v0.4.0");
-        AppVersion v3 = new AppVersion("v0.4.5");
-        AppVersion v4 = new AppVersion("v0.4.5-pre1");
-        AppVersion v5 = new AppVersion("v0.4.5-pre2");
-        AppVersion target = new AppVersion("v0.4.0");
-        int i1 = v1.compareTo(target);
-        int i2 = v2.compareTo(target);
-        int i3 = v3.compareTo(target);
-        System.out.println("patch?" + (i1));
-        System.out.println("patch?" + (i2));
-        System.out.println("patch?" + (i3));
-        System.out.println(v3);
-        System.out.println(v4);
-        System.out.println(v5);
-        System.out.println(v3.isPreRelease);
-        System.out.println(v4.isPreRelease);
+    /**
+     * Returns a shared version for frequently seen tags, ie the current version and recent releases.
+     */
+    public static AppVersion of(String tag) {
+        if (tag == null) return new AppVersion(null);
+        AppVersion version = cache.get(tag);
+        if (version != null) return version;
+        version = new AppVersion(tag);
+        if (cache.size() < MAX_CACHE_SIZE) {
+            AppVersion existing = cache.putIfAbsent(tag, version);
+            if (existing != null) return existing;
+        }
+        return version;
     }
 
-    public static void runPreReleaseTest() {
-        AppVersion v1 = new AppVersion("v0.3.5");
-        AppVersion v2 = new AppVersion("v0.4.0-pre1");
-        AppVersion v3 = new AppVersion("v0.4.0-pre2");
-        AppVersion v4 = new AppVersion("v0.4.1");
+    private long createKey() {
+        if (!valid) return INVALID_KEY;
+        int preField = isPreRelease ? pre : STABLE_PRE;
+        // Major is limited to 15 bits so valid keys are never negative
+        if (major > FIELD_MAX >> 1 || minor > FIELD_MAX || patch > FIELD_MAX || (isPreRelease && pre >= STABLE_PRE))
+            return NO_KEY;
+        return (long) major << (FIELD_BITS * 3) | (long) minor << (FIELD_BITS * 2) | (long) patch << FIELD_BITS | preField;
+    }
 
-        System.out.println(v1.compareTo(v2));
-        System.out.println(v2.compareTo(v3));
-        System.out.println(v3.compareTo(v4));
-        System.out.println(v2.compareTo(v4));
+    private static int digitsEnd(String tag, int start) {
+        int index = start;
+        while (index < tag.length()) {
+            char c = tag.charAt(index);
+            if (c < '0' || c > '9') break;
+            index++;
+        }
+        return index;
     }
 
-    public static void runTestSort() {
-        ArrayList<AppVersion> list = new ArrayList<>();
-        list.add(new AppVersion("v0.2.0"));
-        list.add(new AppVersion("v1.2.1"));
-        list.add(new AppVersion("v1.2.0"));
-        list.add(new AppVersion("v1.2.0-pre4"));
-        list.add(new AppVersion("v0.0.2-pre1"));
-        list.add(new AppVersion("v1.0.0"));
-        list.add(new AppVersion("v0.2.0-pre81"));
-        list.add(new AppVersion("v0.0.2"));
-        list.add(new AppVersion("v1.2.0-pre5"));
-        list.add(new AppVersion("v0.0.3"));
-        list.add(new AppVersion("v0.2.0-pre3"));
-        list.add(new AppVersion("v1.2.0-pre23"));
-        System.out.println(Arrays.toString(list.toArray()));
-        Collections.sort(list);
-        System.out.println(Arrays.toString(list.toArray()));
+    /**
+     * @return The number, or -1 if there are no digits or the number doesn't fit in an int
+     */
+    private static int parseNumber(String tag, int start, int end) {
+        if (start == end) return -1;
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (tag.charAt(i) - '0');
+            if (value > Integer.MAX_VALUE) return -1;
+        }
+        return (int) value;
+    }
+
+    public int getMajor() {
+        return major;
+    }
+
+    public int getMinor() {
+        return minor;
+    }
+
+    public int getPatch() {
+        return patch;
+    }
+
+    /**
+     * @return The pre-release number, or -1 for stable versions
+     */
+    public int getPreRelease() {
+        return pre;
     }
 
     @Override
     public int compareTo(AppVersion other) {
+        if (key != NO_KEY && other.key != NO_KEY) return Long.compare(key, other.key);
+        return compareFields(other);
+    }
+
+    private int compareFields(AppVersion other) {
         if (other.major > major) return -1;
         else if (other.major < major) return 1;
         else if (other.minor > minor) return -1;
@@ -123,6 +180,18 @@ public class AppVersion implements Comparable<AppVersion> {
         return 0;
     }
 
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof AppVersion version)) return false;
+        return compareFields(version) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return string.hashCode();
+    }
+
     @Override
     public String toString() {
         return string;
@@ -0,0 +1,68 @@
+package com.zrmiller.zupdate.data;
+
+import java.util.ArrayList;
+
+/**
+ * Progress of a segmented download, saved to disk so an interrupted download can be resumed.
+ */
+public class DownloadState {
+
+    public String url;
+    public long size;
+    public String etag;
+    public String lastModified;
+    public ArrayList<Segment> segments = new ArrayList<>();
+
+    public DownloadState() {
+
+    }
+
+    public DownloadState(String url, long size, String etag, String lastModified) {
+        this.url = url;
+        this.size = size;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Checks if this state was created for the same remote file.
+     */
+    public boolean matches(String url, long size, String etag, String lastModified) {
+        if (!url.equals(this.url) || size != this.size) return false;
+        if (etag != null || this.etag != null) return etag != null && etag.equals(this.etag);
+        return lastModified != null && lastModified.equals(this.lastModified);
+    }
+
+    public long getBytesDownloaded() {
+        long total = 0;
+        for (Segment segment : segments) total += segment.downloaded;
+        return total;
+    }
+
+    public static class Segment {
+
+        // Inclusive byte range
+        public long start;
+        public long end;
+        public long downloaded;
+
+        public Segment() {
+
+        }
+
+        public Segment(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long length() {
+            return end - start + 1;
+        }
+
+        public boolean isComplete() {
+            return downloaded >= length();
+        }
+
+    }
+
+}
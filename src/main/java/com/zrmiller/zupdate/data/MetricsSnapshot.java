@@ -0,0 +1,41 @@
+package com.zrmiller.zupdate.data;
+
+import java.util.Map;
+
+/**
+ * A point in time copy of {@link com.zrmiller.zupdate.UpdateMetrics}.
+ *
+ * @param time       When the snapshot was taken, in epoch milliseconds
+ * @param counters   Counter values by name
+ * @param histograms Histograms by name, only including histograms with at least one value
+ */
+public record MetricsSnapshot(long time, Map<String, Long> counters, Map<String, HistogramSnapshot> histograms) {
+
+    /**
+     * Values are grouped into power of two buckets, where bucket i holds values from 2^(i-1) to 2^i - 1,
+     * and bucket 0 holds zero. Percentiles are therefore an upper bound, accurate to within a factor of two.
+     */
+    public record HistogramSnapshot(long count, long sum, long min, long max, long[] buckets) {
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile A number 0-100
+         * @return The upper bound of the bucket containing the percentile, capped at the max value
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) return 0;
+            long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= Math.max(1, rank)) return i == 0 ? 0 : Math.min(max, (1L << i) - 1);
+            }
+            return max;
+        }
+
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.zrmiller.zupdate.data;
+
+/**
+ * A file attached to a release.
+ *
+ * @param name File name, ie App.jar
+ * @param url  URL of the file to download
+ * @param size Size in bytes, or -1 if unknown
+ */
+public record ReleaseAsset(String name, String url, long size) {
+
+}
@@ -2,6 +2,13 @@ package com.zrmiller.zupdate.data;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class ReleaseVersion implements Comparable<ReleaseVersion> {
 
@@ -11,6 +18,7 @@ public class ReleaseVersion implements Comparable<ReleaseVersion> {
     public final String downloadURL;
     public final String body;
     public final boolean preRelease;
+    public final List<ReleaseAsset> assets;
 
     /**
      * @param tag      GitHub tag, ie v0.1.0
@@ -19,11 +27,28 @@ public class ReleaseVersion implements Comparable<ReleaseVersion> {
      */
     public ReleaseVersion(String tag, String fileName, String url, String body, boolean preRelease) {
         this.tag = tag;
-        this.version = new AppVersion(tag);
+        this.version = AppVersion.of(tag);
         this.fileName = fileName;
         this.downloadURL = url;
         this.body = body;
         this.preRelease = preRelease;
+        this.assets = Collections.singletonList(new ReleaseAsset(fileName, url, -1));
+    }
+
+    /**
+     * @param tag        GitHub tag, ie v0.1.0
+     * @param assets     Files attached to the release, must contain at least one file
+     * @param preRelease If the release is marked as a pre-release
+     */
+    public ReleaseVersion(String tag, List<ReleaseAsset> assets, String body, boolean preRelease) {
+        this.tag = tag;
+        this.version = AppVersion.of(tag);
+        this.assets = Collections.unmodifiableList(new ArrayList<>(assets));
+        ReleaseAsset jar = findJarAsset(this.assets);
+        this.fileName = jar.name();
+        this.downloadURL = jar.url();
+        this.body = body;
+        this.preRelease = preRelease;
     }
 
     public ReleaseVersion(JsonElement json) {
@@ -32,14 +57,117 @@ public class ReleaseVersion implements Comparable<ReleaseVersion> {
 
     public ReleaseVersion(JsonObject json) {
         tag = json.get("tag_name").getAsString();
-        version = new AppVersion(tag);
-        JsonObject asset = json.getAsJsonArray("assets").get(0).getAsJsonObject();
-        fileName = asset.get("name").getAsString();
-        downloadURL = asset.get("browser_download_url").getAsString();
+        version = AppVersion.of(tag);
+        ArrayList<ReleaseAsset> assetList = new ArrayList<>();
+        for (JsonElement element : json.getAsJsonArray("assets")) {
+            JsonObject asset = element.getAsJsonObject();
+            assetList.add(new ReleaseAsset(asset.get("name").getAsString(),
+                    asset.get("browser_download_url").getAsString(), asset.get("size").getAsLong()));
+        }
+        assets = Collections.unmodifiableList(assetList);
+        ReleaseAsset jar = findJarAsset(assets);
+        fileName = jar.name();
+        downloadURL = jar.url();
         body = json.get("body").getAsString();
         preRelease = json.get("prerelease").getAsBoolean();
     }
 
+    /**
+     * Reads a single release object from a GitHub API response, skipping every unused field.
+     *
+     * @param reader Reader positioned at the start of a release object
+     * @return The release, or null if it's a draft or has no files attached
+     */
+    public static ReleaseVersion read(JsonReader reader) throws IOException {
+        String tag = null;
+        String body = null;
+        boolean preRelease = false;
+        boolean draft = false;
+        ArrayList<ReleaseAsset> assets = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "tag_name" -> tag = nextStringOrNull(reader);
+                case "body" -> body = nextStringOrNull(reader);
+                case "prerelease" -> preRelease = reader.nextBoolean();
+                case "draft" -> draft = reader.nextBoolean();
+                case "assets" -> {
+                    reader.beginArray();
+                    while (reader.hasNext()) assets.add(readAsset(reader));
+                    reader.endArray();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (tag == null || draft || assets.isEmpty()) return null;
+        return new ReleaseVersion(tag, assets, body, preRelease);
+    }
+
+    private static ReleaseAsset readAsset(JsonReader reader) throws IOException {
+        String name = null;
+        String url = null;
+        long size = -1;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name" -> name = nextStringOrNull(reader);
+                case "browser_download_url" -> url = nextStringOrNull(reader);
+                case "size" -> size = reader.nextLong();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new ReleaseAsset(name, url, size);
+    }
+
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.NULL) return reader.nextString();
+        reader.nextNull();
+        return null;
+    }
+
+    /**
+     * Finds a binary patch that upgrades the given version to this release.
+     * Patches are named {@code <name>-<fromTag>-to-<toTag>.patch}, ie App-v1.2.0-to-v1.2.1.patch.
+     *
+     * @param fromTag Tag of the version being patched
+     * @return The patch asset, or null if this release has no patch for the given version
+     */
+    public ReleaseAsset findPatchAsset(String fromTag) {
+        return findAsset("-" + fromTag + "-to-" + tag + ".patch");
+    }
+
+    /**
+     * @param suffix End of the file name
+     * @return The first asset whose name ends with the given suffix, or null if none exists
+     */
+    public ReleaseAsset findAsset(String suffix) {
+        for (ReleaseAsset asset : assets) {
+            if (asset.name().endsWith(suffix)) return asset;
+        }
+        return null;
+    }
+
+    /**
+     * @param name Exact file name, ie App.jar.sha256
+     * @return The asset with the given name, or null if none exists
+     */
+    public ReleaseAsset getAsset(String name) {
+        for (ReleaseAsset asset : assets) {
+            if (asset.name().equals(name)) return asset;
+        }
+        return null;
+    }
+
+    // The main download is the first JAR file, falling back to the first asset for releases without one.
+    private static ReleaseAsset findJarAsset(List<ReleaseAsset> assets) {
+        for (ReleaseAsset asset : assets) {
+            if (asset.name().endsWith(".jar")) return asset;
+        }
+        return assets.get(0);
+    }
+
     @Override
     public int compareTo(ReleaseVersion other) {
         return version.compareTo(other.version);
@@ -0,0 +1,34 @@
+package com.zrmiller.zupdate.data;
+
+/**
+ * A snapshot of download progress.
+ *
+ * @param bytesDownloaded Bytes received so far
+ * @param totalBytes      Size of the download, or -1 if unknown
+ * @param bytesPerSecond  Smoothed download speed, or 0 if not measured yet
+ * @param etaMillis       Estimated time remaining, or -1 if unknown
+ * @param rateLimit       Download speed limit in bytes per second, or 0 if unlimited
+ */
+public record TransferProgress(long bytesDownloaded, long totalBytes, double bytesPerSecond, long etaMillis, long rateLimit) {
+
+    public boolean isRateLimited() {
+        return rateLimit > 0;
+    }
+
+    public boolean isSizeKnown() {
+        return totalBytes > 0;
+    }
+
+    /**
+     * @return A number 0-100, or -1 if the size of the download is unknown
+     */
+    public int getPercent() {
+        if (!isSizeKnown()) return -1;
+        return (int) Math.min(100, Math.round((double) bytesDownloaded / totalBytes * 100));
+    }
+
+    public boolean isComplete() {
+        return isSizeKnown() && bytesDownloaded >= totalBytes;
+    }
+
+}
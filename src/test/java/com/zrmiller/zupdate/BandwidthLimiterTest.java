@@ -0,0 +1,46 @@
+package com.zrmiller.zupdate;
+
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+
+import static org.junit.Assert.assertTrue;
+
+public class BandwidthLimiterTest {
+
+    private static final int CHUNK = 1024 * 16;
+
+    @Test
+    public void burstRunsAtFullSpeedThenLimits() throws InterruptedIOException {
+        BandwidthLimiter limiter = new BandwidthLimiter(1024 * 1024, 1024 * 64);
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) limiter.acquire(CHUNK);
+        long burstMs = (System.nanoTime() - start) / 1_000_000;
+        // After the burst, 256 KB at 1 MB/s takes about 250ms
+        for (int i = 0; i < 16; i++) limiter.acquire(CHUNK);
+        long totalMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue("Burst took " + burstMs + "ms", burstMs < 100);
+        assertTrue("Limited transfer took " + totalMs + "ms", totalMs >= 200);
+    }
+
+    @Test
+    public void liftingLimitWakesWaitingThreads() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter(1, 1);
+        limiter.acquire(1);
+        Thread lifter = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignore) {
+            }
+            limiter.setRate(0);
+        });
+        long start = System.nanoTime();
+        lifter.start();
+        // Would wait about a second at the original rate
+        limiter.acquire(1);
+        long waitMs = (System.nanoTime() - start) / 1_000_000;
+        lifter.join();
+        assertTrue("Waited " + waitMs + "ms", waitMs < 500);
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.zrmiller.zupdate;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DeltaPatchTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void patchRebuildsTargetFile() throws IOException {
+        Random random = new Random(42);
+        byte[] oldData = new byte[200_000];
+        random.nextBytes(oldData);
+        // New version with an insertion, a modification and a truncated tail
+        byte[] inserted = new byte[3000];
+        random.nextBytes(inserted);
+        byte[] newData = new byte[oldData.length + inserted.length - 5000];
+        System.arraycopy(oldData, 0, newData, 0, 50_000);
+        System.arraycopy(inserted, 0, newData, 50_000, inserted.length);
+        System.arraycopy(oldData, 50_000, newData, 50_000 + inserted.length, newData.length - 50_000 - inserted.length);
+        newData[120_000] ^= 0x7F;
+
+        Path oldFile = write("old.jar", oldData);
+        Path newFile = write("new.jar", newData);
+        Path patch = folder.getRoot().toPath().resolve("update.patch");
+        Path result = folder.getRoot().toPath().resolve("result.jar");
+        DeltaPatch.create(oldFile, newFile, patch);
+        DeltaPatch.apply(oldFile, patch, result);
+
+        assertArrayEquals(newData, Files.readAllBytes(result));
+        assertTrue(Files.size(patch) < newData.length / 10);
+    }
+
+    @Test
+    public void patchRejectsWrongSourceFile() throws IOException {
+        byte[] data = new byte[10_000];
+        new Random(7).nextBytes(data);
+        Path oldFile = write("old.jar", data);
+        Path newFile = write("new.jar", Arrays.copyOf(data, 12_000));
+        Path patch = folder.getRoot().toPath().resolve("update.patch");
+        DeltaPatch.create(oldFile, newFile, patch);
+        data[0] ^= 1;
+        Path otherFile = write("other.jar", data);
+        try {
+            DeltaPatch.apply(otherFile, patch, folder.getRoot().toPath().resolve("result.jar"));
+            fail("Patch should not apply to a different source file.");
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+
+    private Path write(String name, byte[] data) throws IOException {
+        return Files.write(folder.getRoot().toPath().resolve(name), data);
+    }
+
+}
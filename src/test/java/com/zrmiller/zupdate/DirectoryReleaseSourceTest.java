@@ -0,0 +1,71 @@
+package com.zrmiller.zupdate;
+
+import com.zrmiller.zupdate.data.ReleaseVersion;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DirectoryReleaseSourceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path root;
+    private DirectoryReleaseSource source;
+
+    @Before
+    public void createLayout() throws IOException {
+        root = folder.getRoot().toPath();
+        // Listed out of order, with download URLs pointing somewhere else
+        Files.writeString(root.resolve(StaticReleaseSource.RELEASES_FILE), "["
+                + release("v1.1.0", false) + ","
+                + release("v1.2.0-pre1", true) + ","
+                + release("v1.0.0", false) + "]", StandardCharsets.UTF_8);
+        for (String tag : List.of("v1.0.0", "v1.1.0", "v1.2.0-pre1")) {
+            Files.createDirectories(root.resolve(tag));
+            Files.writeString(root.resolve(tag).resolve("App.jar"), "jar " + tag, StandardCharsets.UTF_8);
+        }
+        source = new DirectoryReleaseSource(root);
+    }
+
+    @Test
+    public void listsReleasesNewestFirst() {
+        ArrayList<String> tags = new ArrayList<>();
+        assertTrue(source.listReleases(release -> tags.add(release.tag)));
+        assertEquals(List.of("v1.2.0-pre1", "v1.1.0", "v1.0.0"), tags);
+        assertEquals("v1.1.0", source.fetchLatestReleaseAsync().join().tag);
+    }
+
+    @Test
+    public void readsAssetsFromLayout() throws IOException {
+        ReleaseVersion release = source.fetchLatestReleaseAsync().join();
+        try (InputStream inputStream = source.openAsset(release.assets.get(0))) {
+            assertEquals("jar v1.1.0", new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        Path target = root.resolve("download.jar");
+        RangedDownloader downloader = new RangedDownloader(release.downloadURL, target, 4, (bytes, total) -> {
+        });
+        downloader.download();
+        assertEquals("jar v1.1.0", Files.readString(target, StandardCharsets.UTF_8));
+        assertArrayEquals(UpdateUtil.hash(target), downloader.getSha256());
+    }
+
+    private static String release(String tag, boolean preRelease) {
+        return "{\"tag_name\":\"" + tag + "\",\"body\":\"\",\"prerelease\":" + preRelease + ",\"draft\":false,"
+                + "\"assets\":[{\"name\":\"App.jar\",\"browser_download_url\":\"https://example.com/App.jar\",\"size\":10}]}";
+    }
+
+}
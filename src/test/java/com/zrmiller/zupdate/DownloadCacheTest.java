@@ -0,0 +1,157 @@
+package com.zrmiller.zupdate;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] file = new byte[1024 * 256];
+    private final AtomicInteger downloads = new AtomicInteger();
+    private HttpServer server;
+    private String url;
+
+    @Before
+    public void startServer() throws IOException {
+        new Random(7).nextBytes(file);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/App.jar", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/App.jar";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void concurrentDownloadsFetchOnce() throws Exception {
+        DownloadCache cache = DownloadCache.open(folder.newFolder("cache").toPath());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        ArrayList<Future<byte[]>> results = new ArrayList<>();
+        ArrayList<Path> targets = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Path target = folder.newFolder("app" + i).toPath().resolve("App.jar");
+            targets.add(target);
+            results.add(executor.submit((Callable<byte[]>) () -> cache.download(url, target, 1, null, (bytes, total) -> {
+            }, file.length, null)));
+        }
+        for (Future<byte[]> result : results) assertArrayEquals(results.get(0).get(), result.get());
+        executor.shutdown();
+        assertEquals(1, downloads.get());
+        for (Path target : targets) assertArrayEquals(file, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void evictedDownloadsFetchAgain() throws IOException {
+        DownloadCache cache = DownloadCache.open(folder.newFolder("cache").toPath());
+        Path target = folder.getRoot().toPath().resolve("App.jar");
+        cache.download(url, target, 1, null, (bytes, total) -> {
+        }, file.length, null);
+        cache.evict(url);
+        cache.download(url, target, 1, null, (bytes, total) -> {
+        }, file.length, null);
+        assertEquals(2, downloads.get());
+    }
+
+    @Test
+    public void entriesNotMatchingChecksumFetchAgain() throws IOException {
+        DownloadCache cache = DownloadCache.open(folder.newFolder("cache").toPath());
+        Path target = folder.getRoot().toPath().resolve("App.jar");
+        String sha256 = HexFormat.of().formatHex(cache.download(url, target, 1, null, (bytes, total) -> {
+        }, -1, null));
+        cache.download(url, target, 1, null, (bytes, total) -> {
+        }, -1, () -> sha256);
+        assertEquals(1, downloads.get());
+        cache.download(url, target, 1, null, (bytes, total) -> {
+        }, file.length, () -> "0".repeat(64));
+        assertEquals(2, downloads.get());
+        assertArrayEquals(file, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void unverifiableEntriesFetchAgain() throws IOException {
+        DownloadCache cache = DownloadCache.open(folder.newFolder("cache").toPath());
+        Path target = folder.getRoot().toPath().resolve("App.jar");
+        cache.download(url, target, 1, null, (bytes, total) -> {
+        }, -1, null);
+        cache.download(url, target, 1, null, (bytes, total) -> {
+        }, -1, null);
+        assertEquals(2, downloads.get());
+        cache.download(url, target, 1, null, (bytes, total) -> {
+        }, file.length - 1, null);
+        assertEquals(3, downloads.get());
+    }
+
+    @Test
+    public void downloadsAreLinkedNotCopied() throws IOException {
+        Path directory = folder.newFolder("cache").toPath();
+        DownloadCache cache = DownloadCache.open(directory);
+        Path target = folder.getRoot().toPath().resolve("App.jar");
+        String sha256 = HexFormat.of().formatHex(cache.download(url, target, 1, null, (bytes, total) -> {
+        }, file.length, null));
+        assertTrue(Files.isSameFile(directory.resolve(sha256 + ".bin"), target));
+        // The target is its own link to the data, so evicting the entry leaves it intact
+        cache.evict(url);
+        assertArrayEquals(file, Files.readAllBytes(target));
+        assertFalse(Files.exists(UpdateUtil.getStagingPath(target)));
+    }
+
+    @Test
+    public void directoryIsOwnerOnly() throws IOException {
+        Path directory = folder.getRoot().toPath().resolve("cache");
+        assertNotNull(DownloadCache.open(directory));
+        PosixFileAttributeView posixView = Files.getFileAttributeView(directory, PosixFileAttributeView.class);
+        Assume.assumeNotNull(posixView);
+        assertEquals(PosixFilePermissions.fromString("rwx------"), posixView.readAttributes().permissions());
+    }
+
+    // No range support, so each download is a single GET
+    private void handle(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(file.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        downloads.incrementAndGet();
+        exchange.sendResponseHeaders(200, file.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(file);
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.zrmiller.zupdate;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JarEntryPatchTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mergeRebuildsNewJar() throws IOException {
+        Path oldJar = folder.getRoot().toPath().resolve("old.jar");
+        Path newJar = folder.getRoot().toPath().resolve("new.jar");
+        writeJar(oldJar, "v1", Map.of(
+                "com/example/Main.class", "main v1",
+                "com/example/Util.class", "util",
+                "removed.txt", "removed"));
+        writeJar(newJar, "v2", Map.of(
+                "com/example/Main.class", "main v2",
+                "com/example/Util.class", "util",
+                "added.txt", "added"));
+        Path manifestFile = folder.getRoot().toPath().resolve("App.jar" + JarEntryPatch.MANIFEST_SUFFIX);
+        Path archive = folder.getRoot().toPath().resolve("App.jar" + JarEntryPatch.ARCHIVE_SUFFIX);
+        JarEntryPatch.createManifest(oldJar, "v1", newJar, manifestFile);
+        JarEntryPatch.createArchive(oldJar, newJar, archive);
+
+        // Unchanged entries aren't published
+        List<String> archived = entryNames(archive);
+        assertTrue(archived.contains("com/example/Main.class"));
+        assertTrue(archived.contains("added.txt"));
+        assertFalse(archived.contains("com/example/Util.class"));
+
+        JarEntryPatch.EntryManifest manifest = JarEntryPatch.readManifest(manifestFile);
+        assertTrue(manifest.matchesBase("v1", UpdateUtil.hash(oldJar)));
+        assertFalse(manifest.matchesBase("v1", UpdateUtil.hash(newJar)));
+        Path result = folder.getRoot().toPath().resolve("result.jar");
+        JarEntryPatch.merge(oldJar, JarEntryPatch.hashEntries(oldJar), manifest.entries(), archive, result);
+        assertEquals(entryNames(newJar), entryNames(result));
+        try (ZipFile expected = new ZipFile(newJar.toFile()); ZipFile actual = new ZipFile(result.toFile())) {
+            for (ZipEntry entry : Collections.list(expected.entries()))
+                assertArrayEquals(entry.getName(), readEntry(expected, entry), readEntry(actual, actual.getEntry(entry.getName())));
+        }
+        try (JarFile expected = new JarFile(newJar.toFile()); JarFile actual = new JarFile(result.toFile())) {
+            assertEquals(expected.getManifest(), actual.getManifest());
+        }
+    }
+
+    @Test
+    public void tamperedEntryIsRejected() throws IOException {
+        Path oldJar = folder.getRoot().toPath().resolve("old.jar");
+        Path newJar = folder.getRoot().toPath().resolve("new.jar");
+        writeJar(oldJar, "v1", Map.of("com/example/Main.class", "main v1"));
+        writeJar(newJar, "v1", Map.of("com/example/Main.class", "main v2"));
+        Path manifestFile = folder.getRoot().toPath().resolve("App.jar" + JarEntryPatch.MANIFEST_SUFFIX);
+        JarEntryPatch.createManifest(oldJar, "v1", newJar, manifestFile);
+        Path archive = folder.getRoot().toPath().resolve("App.jar" + JarEntryPatch.ARCHIVE_SUFFIX);
+        try (ZipOutputStream outputStream = new ZipOutputStream(Files.newOutputStream(archive))) {
+            outputStream.putNextEntry(new ZipEntry("com/example/Main.class"));
+            outputStream.write("main v3".getBytes(StandardCharsets.UTF_8));
+            outputStream.closeEntry();
+        }
+        try {
+            JarEntryPatch.merge(oldJar, JarEntryPatch.hashEntries(oldJar), JarEntryPatch.readManifest(manifestFile).entries(), archive,
+                    folder.getRoot().toPath().resolve("result.jar"));
+            fail("Tampered entry was accepted.");
+        } catch (IOException e) {
+            assertEquals("Entry failed verification: com/example/Main.class", e.getMessage());
+        }
+    }
+
+    private static void writeJar(Path jar, String version, Map<String, String> entries) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "com.example.Main");
+        manifest.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_VERSION, version);
+        // Sorted, so entry order doesn't depend on map iteration order
+        LinkedHashMap<String, String> sorted = new LinkedHashMap<>();
+        entries.keySet().stream().sorted().forEach(name -> sorted.put(name, entries.get(name)));
+        try (OutputStream fileStream = Files.newOutputStream(jar);
+             JarOutputStream outputStream = new JarOutputStream(fileStream, manifest)) {
+            for (Map.Entry<String, String> entry : sorted.entrySet()) {
+                outputStream.putNextEntry(new ZipEntry(entry.getKey()));
+                outputStream.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                outputStream.closeEntry();
+            }
+        }
+    }
+
+    private static List<String> entryNames(Path zip) throws IOException {
+        ArrayList<String> names = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            for (ZipEntry entry : Collections.list(zipFile.entries())) names.add(entry.getName());
+        }
+        return names;
+    }
+
+    private static byte[] readEntry(ZipFile zipFile, ZipEntry entry) throws IOException {
+        try (InputStream inputStream = zipFile.getInputStream(entry)) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+}
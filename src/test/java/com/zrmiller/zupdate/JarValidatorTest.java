@@ -0,0 +1,108 @@
+package com.zrmiller.zupdate;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JarValidatorTest {
+
+    private static final String MAIN_CLASS = "com.example.Main";
+    private static final String MARKER = "stored entry contents";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void validJarPasses() throws IOException {
+        JarValidator.validate(createJar(MAIN_CLASS), new ForkJoinPool(4));
+    }
+
+    @Test
+    public void missingMainClassFails() throws IOException {
+        assertFails(createJar("com.example.Missing"), "Main-Class");
+    }
+
+    @Test
+    public void corruptEntryFails() throws IOException {
+        Path jar = createJar(MAIN_CLASS);
+        byte[] bytes = Files.readAllBytes(jar);
+        byte[] marker = MARKER.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length - marker.length; i++) {
+            if (bytes[i] == marker[0] && new String(bytes, i, marker.length, StandardCharsets.UTF_8).equals(MARKER)) {
+                bytes[i] ^= 1;
+                break;
+            }
+        }
+        Files.write(jar, bytes);
+        assertFails(jar, "CRC mismatch");
+    }
+
+    @Test
+    public void truncatedJarFails() throws IOException {
+        Path jar = createJar(MAIN_CLASS);
+        byte[] bytes = Files.readAllBytes(jar);
+        Files.write(jar, Arrays.copyOf(bytes, bytes.length / 2));
+        try {
+            JarValidator.validate(jar);
+            fail("Truncated JAR passed validation");
+        } catch (IOException ignore) {
+        }
+    }
+
+    private void assertFails(Path jar, String reason) {
+        try {
+            JarValidator.validate(jar);
+            fail("Invalid JAR passed validation");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(reason));
+        }
+    }
+
+    private Path createJar(String mainClass) throws IOException {
+        Path jar = folder.newFile().toPath();
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, mainClass);
+        try (OutputStream fileStream = Files.newOutputStream(jar);
+             JarOutputStream outputStream = new JarOutputStream(fileStream, manifest)) {
+            for (int i = 0; i < 100; i++) {
+                outputStream.putNextEntry(new JarEntry("com/example/Class" + i + ".class"));
+                outputStream.write(("Class " + i).repeat(50).getBytes(StandardCharsets.UTF_8));
+                outputStream.closeEntry();
+            }
+            outputStream.putNextEntry(new JarEntry("com/example/Main.class"));
+            outputStream.write(new byte[]{1, 2, 3});
+            outputStream.closeEntry();
+            byte[] data = MARKER.getBytes(StandardCharsets.UTF_8);
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            JarEntry stored = new JarEntry("data.txt");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(data.length);
+            stored.setCompressedSize(data.length);
+            stored.setCrc(crc.getValue());
+            outputStream.putNextEntry(stored);
+            outputStream.write(data);
+            outputStream.closeEntry();
+        }
+        return jar;
+    }
+
+}
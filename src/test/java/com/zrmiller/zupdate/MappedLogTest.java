@@ -0,0 +1,41 @@
+package com.zrmiller.zupdate;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappedLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readerReturnsRecordsAcrossChunksAndReopens() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("log.mlog");
+        String message = "x".repeat(1000);
+        long time = 1_700_000_000_000L;
+        // Enough records to fill more than one chunk
+        int firstCount = MappedLogSink.CHUNK_SIZE / message.length() + 10;
+        MappedLogSink sink = new MappedLogSink(file);
+        for (int i = 0; i < firstCount; i++) sink.append(time, message, false);
+        sink.close();
+        // A later update process continues the same file
+        sink = new MappedLogSink(file);
+        sink.append(time, "Last message", true);
+        sink.close();
+
+        StringWriter output = new StringWriter();
+        assertEquals(firstCount + 1, MappedLogReader.convert(file, output));
+        String[] lines = output.toString().split("\n");
+        assertEquals(ZLogger.formatTimestamp(time) + " | " + message, lines[0]);
+        assertTrue(lines[lines.length - 1].endsWith(" | Last message"));
+    }
+
+}
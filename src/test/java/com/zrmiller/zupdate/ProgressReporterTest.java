@@ -0,0 +1,35 @@
+package com.zrmiller.zupdate;
+
+import com.zrmiller.zupdate.data.TransferProgress;
+import org.junit.Test;
+
+import javax.swing.*;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ProgressReporterTest {
+
+    @Test
+    public void finishFlushesSkippedUpdate() throws InterruptedException, InvocationTargetException {
+        List<TransferProgress> dispatched = new ArrayList<>();
+        ProgressReporter reporter = new ProgressReporter(dispatched::add, 1, () -> 0);
+        // The size is unknown, so the last update can't be recognized as complete
+        reporter.onProgress(100, -1);
+        SwingUtilities.invokeAndWait(() -> {
+        });
+        reporter.onProgress(200, -1);
+        SwingUtilities.invokeAndWait(() -> {
+        });
+        assertEquals(1, dispatched.size());
+        reporter.finish();
+        reporter.finish();
+        SwingUtilities.invokeAndWait(() -> {
+        });
+        assertEquals(2, dispatched.size());
+        assertEquals(200, dispatched.get(1).bytesDownloaded());
+    }
+
+}
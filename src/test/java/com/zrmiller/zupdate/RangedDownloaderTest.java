@@ -0,0 +1,225 @@
+package com.zrmiller.zupdate;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.zrmiller.zupdate.data.DownloadState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RangedDownloaderTest {
+
+    private static final int SEGMENT_SIZE = 1024 * 1024;
+    private static final String ETAG = "\"v1\"";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] file = new byte[SEGMENT_SIZE * 4];
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger fullDownloads = new AtomicInteger();
+    private HttpServer server;
+    private String url;
+
+    // Server behavior, changed by each test
+    private volatile boolean acceptRanges = true;
+    private volatile String currentEtag = ETAG;
+    private volatile int truncateFirstRange = -1;
+
+    @Before
+    public void startServer() throws IOException {
+        new Random(11).nextBytes(file);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/App.jar", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/App.jar";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void fileIsSplitIntoSegments() throws IOException {
+        Path target = folder.getRoot().toPath().resolve("App.jar");
+        RangedDownloader downloader = new RangedDownloader(url, target, 4, (bytes, total) -> {
+        });
+        downloader.download();
+        assertArrayEquals(file, Files.readAllBytes(target));
+        assertArrayEquals(UpdateUtil.newDigest().digest(file), downloader.getSha256());
+        assertEquals(4, ranges.size());
+        for (int i = 0; i < 4; i++)
+            assertTrue(ranges.contains("bytes=" + i * SEGMENT_SIZE + "-" + ((i + 1) * SEGMENT_SIZE - 1)));
+        assertEquals(0, fullDownloads.get());
+        assertFalse(Files.exists(Path.of(target + ".download.json")));
+    }
+
+    @Test
+    public void savedStateIsResumed() throws IOException {
+        Path target = folder.getRoot().toPath().resolve("App.jar");
+        writePartialDownload(target, ETAG);
+        RangedDownloader downloader = new RangedDownloader(url, target, 2, (bytes, total) -> {
+        });
+        downloader.download();
+        assertArrayEquals(file, Files.readAllBytes(target));
+        assertArrayEquals(UpdateUtil.newDigest().digest(file), downloader.getSha256());
+        // Only the rest of the first segment is requested
+        assertEquals(List.of("bytes=" + SEGMENT_SIZE / 2 + "-" + (SEGMENT_SIZE * 2 - 1)), ranges);
+    }
+
+    @Test
+    public void changedFileIsDownloadedAgain() throws IOException {
+        Path target = folder.getRoot().toPath().resolve("App.jar");
+        writePartialDownload(target, "\"v0\"");
+        RangedDownloader downloader = new RangedDownloader(url, target, 2, (bytes, total) -> {
+        });
+        downloader.download();
+        assertArrayEquals(file, Files.readAllBytes(target));
+        assertEquals(2, ranges.size());
+        assertTrue(ranges.contains("bytes=0-" + (SEGMENT_SIZE * 2 - 1)));
+        assertTrue(ranges.contains("bytes=" + SEGMENT_SIZE * 2 + "-" + (file.length - 1)));
+    }
+
+    @Test
+    public void rejectedRangeFallsBackToSingleStream() throws IOException {
+        // The file changes between the probe and the range requests, so If-Range no longer matches
+        currentEtag = "\"v2\"";
+        Path target = folder.getRoot().toPath().resolve("App.jar");
+        RangedDownloader downloader = new RangedDownloader(url, target, 4, (bytes, total) -> {
+        });
+        downloader.download();
+        assertArrayEquals(file, Files.readAllBytes(target));
+        assertArrayEquals(UpdateUtil.newDigest().digest(file), downloader.getSha256());
+        assertTrue(fullDownloads.get() >= 1);
+        assertFalse(Files.exists(Path.of(target + ".download.json")));
+    }
+
+    @Test
+    public void serverWithoutRangesUsesSingleStream() throws IOException {
+        acceptRanges = false;
+        Path target = folder.getRoot().toPath().resolve("App.jar");
+        RangedDownloader downloader = new RangedDownloader(url, target, 4, (bytes, total) -> {
+        });
+        downloader.download();
+        assertArrayEquals(file, Files.readAllBytes(target));
+        assertTrue(ranges.isEmpty());
+        assertEquals(1, fullDownloads.get());
+    }
+
+    @Test
+    public void interruptedSegmentResumesFromLastByte() throws IOException {
+        truncateFirstRange = 100_000;
+        Path target = folder.getRoot().toPath().resolve("App.jar");
+        RangedDownloader downloader = new RangedDownloader(url, target, 1, (bytes, total) -> {
+        });
+        downloader.download();
+        assertArrayEquals(file, Files.readAllBytes(target));
+        assertArrayEquals(UpdateUtil.newDigest().digest(file), downloader.getSha256());
+        assertEquals(List.of("bytes=0-" + (file.length - 1), "bytes=100000-" + (file.length - 1)), ranges);
+    }
+
+    @Test
+    public void failedDownloadStillFinishes() {
+        AtomicInteger finished = new AtomicInteger();
+        Path target = folder.getRoot().toPath().resolve("App.jar");
+        RangedDownloader downloader = new RangedDownloader(url.replace("App.jar", "Missing.jar"), target, 4, new RangedDownloader.IProgressCallback() {
+            @Override
+            public void onProgress(long bytesDownloaded, long totalBytes) {
+            }
+
+            @Override
+            public void onFinish() {
+                finished.incrementAndGet();
+            }
+        });
+        try {
+            downloader.download();
+            fail("Missing file was downloaded.");
+        } catch (IOException e) {
+            assertEquals(1, finished.get());
+        }
+    }
+
+    // Two segments, with the first half downloaded and the second complete
+    private void writePartialDownload(Path target, String etag) throws IOException {
+        byte[] partial = new byte[file.length];
+        System.arraycopy(file, 0, partial, 0, SEGMENT_SIZE / 2);
+        System.arraycopy(file, SEGMENT_SIZE * 2, partial, SEGMENT_SIZE * 2, SEGMENT_SIZE * 2);
+        Files.write(target, partial);
+        DownloadState state = new DownloadState(url, file.length, etag, null);
+        DownloadState.Segment first = new DownloadState.Segment(0, SEGMENT_SIZE * 2 - 1);
+        first.downloaded = SEGMENT_SIZE / 2;
+        DownloadState.Segment second = new DownloadState.Segment(SEGMENT_SIZE * 2, file.length - 1);
+        second.downloaded = SEGMENT_SIZE * 2;
+        state.segments.add(first);
+        state.segments.add(second);
+        Files.writeString(Path.of(target + ".download.json"), new Gson().toJson(state), StandardCharsets.UTF_8);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (acceptRanges) exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(file.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("ETag", currentEtag);
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        if (range == null || !acceptRanges || (ifRange != null && !ifRange.equals(currentEtag))) {
+            fullDownloads.incrementAndGet();
+            exchange.sendResponseHeaders(200, file.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(file);
+            }
+            return;
+        }
+        ranges.add(range);
+        String[] bounds = range.substring("bytes=".length()).split("-");
+        int start = Integer.parseInt(bounds[0]);
+        int end = Integer.parseInt(bounds[1]);
+        exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + file.length);
+        int truncate = truncateFirstRange;
+        truncateFirstRange = -1;
+        if (truncate != -1) {
+            // Chunked, so the response ends cleanly before the segment is complete
+            exchange.sendResponseHeaders(206, 0);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(file, start, truncate);
+            }
+            return;
+        }
+        exchange.sendResponseHeaders(206, end - start + 1);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(file, start, end - start + 1);
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.zrmiller.zupdate;
+
+import com.zrmiller.zupdate.data.AppVersion;
+import com.zrmiller.zupdate.data.ReleaseVersion;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ReleaseIndexTest {
+
+    private final ReleaseIndex index = new ReleaseIndex(releases("v1.3.0", "v1.4.0", "v1.4.1", "v1.4.2-pre1",
+            "v1.5.0-pre2", "v2.0.0-pre1", "v0.9.0", "not-a-version"));
+
+    @Test
+    public void findsNewestReleases() {
+        assertEquals(7, index.size());
+        assertEquals("v2.0.0-pre1", index.getNewest(true).tag);
+        assertEquals("v1.4.1", index.getNewest(false).tag);
+        assertEquals("v1.4.1", index.getNewestAbove(version("v1.4.0"), false).tag);
+        assertNull(index.getNewestAbove(version("v1.4.1"), false));
+        assertNull(index.getNewestAbove(version("v3.0.0"), true));
+    }
+
+    @Test
+    public void findsNewestInMinorLine() {
+        assertEquals("v1.4.2-pre1", index.getNewestInMinorLine(version("v1.4.0"), true).tag);
+        assertEquals("v1.4.1", index.getNewestInMinorLine(version("v1.4.0"), false).tag);
+        assertNull(index.getNewestInMinorLine(version("v1.5.0"), false));
+        assertNull(index.getNewestInMinorLine(version("v1.6.0"), true));
+    }
+
+    @Test
+    public void listsReleasesBetween() {
+        assertEquals(List.of("v1.4.0", "v1.4.1", "v1.4.2-pre1", "v1.5.0-pre2"),
+                tags(index.getReleasesBetween(version("v1.3.0"), version("v1.5.0-pre2"), true)));
+        assertEquals(List.of("v1.4.0", "v1.4.1"), tags(index.getReleasesBetween(version("v1.3.0"), version("v2.0.0"), false)));
+        assertEquals(List.of(), tags(index.getReleasesBetween(version("v1.4.1"), version("v1.3.0"), true)));
+    }
+
+    @Test
+    public void addsNewReleases() {
+        ReleaseIndex refreshed = index.withReleases(releases("v2.0.0", "v1.4.3"));
+        assertEquals(9, refreshed.size());
+        assertEquals("v2.0.0", refreshed.getNewest(true).tag);
+        assertEquals("v1.4.3", refreshed.getNewestInMinorLine(version("v1.4.0"), false).tag);
+        assertEquals(7, index.size());
+    }
+
+    private static List<ReleaseVersion> releases(String... tags) {
+        ArrayList<ReleaseVersion> releases = new ArrayList<>();
+        for (String tag : tags) releases.add(new ReleaseVersion(tag, "App.jar", "https://example.com/App.jar", "", tag.contains("-pre")));
+        return releases;
+    }
+
+    private static AppVersion version(String tag) {
+        return new AppVersion(tag);
+    }
+
+    private static List<String> tags(List<ReleaseVersion> releases) {
+        ArrayList<String> tags = new ArrayList<>();
+        for (ReleaseVersion release : releases) tags.add(release.tag);
+        return tags;
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.zrmiller.zupdate;
+
+import com.zrmiller.zupdate.data.AppVersion;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.HexFormat;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StagedUpdateTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void verifiedDownloadIsStagedAndSurvivesCleanup() throws IOException {
+        Path releases = createReleases("App.jar");
+        writeJar(releases.resolve("v2.0.0").resolve("App.jar"));
+        String directory = folder.newFolder("work").getPath() + "/";
+
+        UpdateManager updateManager = new UpdateManager(new DirectoryReleaseSource(releases), directory, new AppVersion("v1.0.0"));
+        assertFalse(updateManager.hasStagedUpdate());
+        assertTrue(updateManager.isUpdateAvailable());
+        assertTrue(updateManager.downloadAsync().join());
+        assertTrue(updateManager.hasStagedUpdate());
+
+        // A later launch finds the staged file, and doesn't delete it as a leftover
+        UpdateManager nextLaunch = new UpdateManager(new DirectoryReleaseSource(releases), directory, new AppVersion("v1.0.0"));
+        nextLaunch.continueUpdateProcess(new String[0]);
+        assertTrue(nextLaunch.hasStagedUpdate());
+
+        // Once installed, the staged file is a leftover
+        UpdateManager updated = new UpdateManager(new DirectoryReleaseSource(releases), directory, new AppVersion("v2.0.0"));
+        assertFalse(updated.hasStagedUpdate());
+    }
+
+    @Test
+    public void changedStagedFileIsRejected() throws IOException {
+        Path releases = createReleases("App.jar");
+        writeJar(releases.resolve("v2.0.0").resolve("App.jar"));
+        String directory = folder.newFolder("work").getPath() + "/";
+
+        UpdateManager updateManager = new UpdateManager(new DirectoryReleaseSource(releases), directory, new AppVersion("v1.0.0"));
+        assertTrue(updateManager.isUpdateAvailable());
+        assertTrue(updateManager.downloadAsync().join());
+        // Touching the file without changing it only costs a hash, changing it unstages it
+        Path staged = Path.of(directory, "SlimTrade-Updater.jar");
+        Files.setLastModifiedTime(staged, FileTime.fromMillis(Files.getLastModifiedTime(staged).toMillis() - 1000));
+        assertTrue(updateManager.hasStagedUpdate());
+        Files.write(staged, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        assertFalse(updateManager.hasStagedUpdate());
+    }
+
+    @Test
+    public void failedBackgroundDownloadIsRetried() throws IOException {
+        Path releases = createReleases("App.jar");
+        Path jar = releases.resolve("v2.0.0").resolve("App.jar");
+        Files.write(jar, new byte[]{1, 2, 3});
+        String directory = folder.newFolder("work").getPath() + "/";
+
+        UpdateManager updateManager = new UpdateManager(new DirectoryReleaseSource(releases), directory, new AppVersion("v1.0.0"));
+        assertTrue(updateManager.isUpdateAvailable());
+        // The first attempt fails validation, the second finds a fixed release
+        assertFalse(updateManager.downloadAsync().join());
+        writeJar(jar);
+        assertTrue(updateManager.awaitDownload());
+        assertTrue(updateManager.hasStagedUpdate());
+    }
+
+    @Test
+    public void patchNotMatchingChecksumFallsBackToFullDownload() throws IOException {
+        Path releases = createReleases("App.jar", "App-v1.0.0-to-v2.0.0.patch", "App.jar.sha256");
+        Path release = releases.resolve("v2.0.0");
+        writeJar(release.resolve("App.jar"));
+        Path oldJar = folder.getRoot().toPath().resolve("old.jar");
+        Path wrongJar = folder.getRoot().toPath().resolve("wrong.jar");
+        writeJar(oldJar, new byte[]{1});
+        writeJar(wrongJar, new byte[]{4, 5, 6});
+        // A valid patch, but to a file that isn't the release
+        DeltaPatch.create(oldJar, wrongJar, release.resolve("App-v1.0.0-to-v2.0.0.patch"));
+        Files.writeString(release.resolve("App.jar.sha256"), HexFormat.of().formatHex(UpdateUtil.hash(release.resolve("App.jar"))) + "  App.jar");
+        String directory = folder.newFolder("work").getPath() + "/";
+
+        UpdateManager updateManager = new UpdateManager(new DirectoryReleaseSource(releases), directory, new AppVersion("v1.0.0"));
+        updateManager.continueUpdateProcess(new String[]{"launcher:" + oldJar});
+        assertTrue(updateManager.isUpdateAvailable());
+        assertTrue(updateManager.downloadAsync().join());
+        assertArrayEquals(Files.readAllBytes(release.resolve("App.jar")), Files.readAllBytes(Path.of(directory, "SlimTrade-Updater.jar")));
+    }
+
+    /**
+     * Creates a release directory with a single release, v2.0.0. The assets are left for each test to write.
+     */
+    private Path createReleases(String... assetNames) throws IOException {
+        Path releases = folder.newFolder("releases").toPath();
+        StringBuilder assets = new StringBuilder();
+        for (String name : assetNames) {
+            if (assets.length() > 0) assets.append(",");
+            assets.append("{\"name\":\"").append(name).append("\",\"browser_download_url\":\"\",\"size\":0}");
+        }
+        Files.writeString(releases.resolve(StaticReleaseSource.RELEASES_FILE), "[{\"tag_name\":\"v2.0.0\",\"body\":\"\",\"prerelease\":false,"
+                + "\"draft\":false,\"assets\":[" + assets + "]}]", StandardCharsets.UTF_8);
+        Files.createDirectories(releases.resolve("v2.0.0"));
+        return releases;
+    }
+
+    private static void writeJar(Path jar) throws IOException {
+        writeJar(jar, new byte[]{1, 2, 3});
+    }
+
+    private static void writeJar(Path jar, byte[] mainClass) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "com.example.Main");
+        try (OutputStream fileStream = Files.newOutputStream(jar);
+             JarOutputStream outputStream = new JarOutputStream(fileStream, manifest)) {
+            outputStream.putNextEntry(new JarEntry("com/example/Main.class"));
+            outputStream.write(mainClass);
+            outputStream.closeEntry();
+        }
+    }
+
+}
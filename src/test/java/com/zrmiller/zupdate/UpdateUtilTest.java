@@ -0,0 +1,31 @@
+package com.zrmiller.zupdate;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class UpdateUtilTest {
+
+    private static final String HASH_A = "a".repeat(64);
+    private static final String HASH_B = "B".repeat(64);
+
+    @Test
+    public void findSha256PrefersLineWithFileName() {
+        String text = HASH_A + "  Other.jar\n" + HASH_B + "  App.jar\n";
+        assertEquals(HASH_B.toLowerCase(), UpdateUtil.findSha256(text, "App.jar"));
+    }
+
+    @Test
+    public void findSha256AcceptsSingleHash() {
+        assertEquals(HASH_A, UpdateUtil.findSha256("SHA-256: " + HASH_A, "App.jar"));
+    }
+
+    @Test
+    public void findSha256RejectsAmbiguousOrMissingHash() {
+        assertNull(UpdateUtil.findSha256(HASH_A + "\n" + HASH_B, "App.jar"));
+        assertNull(UpdateUtil.findSha256("No checksum, only " + "a".repeat(65), "App.jar"));
+        assertNull(UpdateUtil.findSha256(null, "App.jar"));
+    }
+
+}
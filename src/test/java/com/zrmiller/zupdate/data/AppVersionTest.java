@@ -0,0 +1,67 @@
+package com.zrmiller.zupdate.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AppVersionTest {
+
+    // The grammar the parser must match
+    private static final Pattern pattern = Pattern.compile("v?(\\d+)\\.(\\d+)\\.(\\d+)(-pre(\\d+))?");
+
+    @Test
+    public void parsesTags() {
+        AppVersion version = new AppVersion("v0.4.5-pre2");
+        assertTrue(version.valid);
+        assertTrue(version.isPreRelease);
+        assertEquals("v0.4.5-pre2", version.toString());
+        assertEquals("v1.2.3", new AppVersion("01.2.3").toString());
+        for (String tag : new String[]{null, "", "v", "1.2", "1.2.3.", "1.2.3-pre", "1.2.3-beta1", "V1.2.3", "vv1.2.3", "1..3"}) {
+            assertFalse(tag, new AppVersion(tag).valid);
+        }
+    }
+
+    @Test
+    public void sortsVersions() {
+        List<String> sorted = Arrays.asList("invalid", "v0.0.2-pre1", "v0.0.2", "v0.0.3", "v0.2.0-pre3", "v0.2.0-pre81",
+                "v0.2.0", "v1.0.0", "v1.2.0-pre4", "v1.2.0-pre5", "v1.2.0-pre23", "v1.2.0", "v1.2.1", "v70000.0.0");
+        ArrayList<AppVersion> versions = new ArrayList<>();
+        for (String tag : sorted) versions.add(new AppVersion(tag));
+        Collections.shuffle(versions, new Random(42));
+        Collections.sort(versions);
+        for (int i = 0; i < sorted.size(); i++) assertEquals(new AppVersion(sorted.get(i)).toString(), versions.get(i).toString());
+    }
+
+    @Test
+    public void matchesRegexGrammar() {
+        Random random = new Random(42);
+        String alphabet = "v0123456789.-pre";
+        for (int i = 0; i < 100_000; i++) {
+            StringBuilder tag = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int j = 0; j < length; j++) tag.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            Matcher matcher = pattern.matcher(tag);
+            AppVersion version = new AppVersion(tag.toString());
+            assertEquals(tag.toString(), matcher.matches(), version.valid);
+            if (version.valid) assertEquals(tag.toString(), matcher.group(4) != null, version.isPreRelease);
+        }
+    }
+
+    @Test
+    public void cachesVersions() {
+        assertSame(AppVersion.of("v1.2.3"), AppVersion.of("v1.2.3"));
+        assertEquals(new AppVersion("v1.2.3"), AppVersion.of("v1.2.3"));
+    }
+
+}